@@ -0,0 +1,57 @@
+package com.premiumminds.oidc.benchmarks;
+
+import com.premiumminds.oidc.AuthorizationHeaders;
+import com.premiumminds.oidc.TokenManager;
+import com.premiumminds.oidc.TokenManagerImpl;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the {@code Authorization} header value of each outbound request, rendering it on every request against
+ * {@link AuthorizationHeaders}, which renders it once per access token. Run with {@code -prof gc} and compare
+ * {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthorizationHeaderBenchmark {
+    private TokenManager<String> tokenManager;
+
+    private AuthorizationHeaders<String> headers;
+
+    @Setup
+    public void setup() {
+        tokenManager = new TokenManagerImpl<>(new FakeOpenIDProvider(TimeUnit.HOURS.toMillis(1), 0,
+                TimeUnit.MILLISECONDS), 5000);
+        headers = new AuthorizationHeaders<>(tokenManager, token -> "Bearer " + token);
+        headers.get();
+    }
+
+    @Benchmark
+    public String naive() {
+        return "Bearer " + tokenManager.getAccessToken();
+    }
+
+    @Benchmark
+    public String cached() {
+        return headers.get();
+    }
+
+    @Benchmark
+    public CompletableFuture<String> cachedAsync() {
+        return headers.getAsync();
+    }
+}
@@ -0,0 +1,68 @@
+package com.premiumminds.oidc.benchmarks;
+
+import com.premiumminds.oidc.AsyncTokenManager;
+import com.premiumminds.oidc.TokenManagerImpl;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@code getAccessToken()} when the access token is in cache, the path every outbound call goes
+ * through. Run with {@code -prof gc}: the cached path must not allocate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CachedTokenBenchmark {
+    private AsyncTokenManager<String> tokenManager;
+
+    @Setup
+    public void setup() {
+        tokenManager = new TokenManagerImpl<>(new FakeOpenIDProvider(TimeUnit.HOURS.toMillis(1), 0,
+                TimeUnit.MILLISECONDS), 5000);
+        tokenManager.getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String cachedHit() {
+        return tokenManager.getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String cachedHit4Threads() {
+        return tokenManager.getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String cachedHitMaxThreads() {
+        return tokenManager.getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public CompletableFuture<String> cachedHitAsync() {
+        return tokenManager.getAccessTokenAsync();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public CompletableFuture<String> cachedHitAsyncMaxThreads() {
+        return tokenManager.getAccessTokenAsync();
+    }
+}
@@ -0,0 +1,70 @@
+package com.premiumminds.oidc.benchmarks;
+
+import com.premiumminds.oidc.TokenManager;
+import com.premiumminds.oidc.TokenManagerImpl;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many threads calling {@code getAccessToken()} on tokens that expire every few milliseconds, against a provider
+ * with latency. The {@code providerCalls} counter must not exceed the {@code expiries} one, whatever the number of
+ * threads: if it does, callers are refreshing the same token more than once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ExpiryContentionBenchmark {
+    @Param({"5"})
+    public long lifetimeMillis;
+
+    @Param({"200"})
+    public long latencyMicros;
+
+    private FakeOpenIDProvider provider;
+
+    private TokenManager<String> tokenManager;
+
+    @Setup
+    public void setup() {
+        provider = new FakeOpenIDProvider(lifetimeMillis, latencyMicros, TimeUnit.MICROSECONDS);
+        tokenManager = new TokenManagerImpl<>(provider, 0);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long providerCalls;
+
+        public long expiries;
+
+        @TearDown(Level.Iteration)
+        public void collect(ExpiryContentionBenchmark benchmark) {
+            // the first thread to tear down takes every call of the iteration, the other ones get zero
+            providerCalls = benchmark.provider.calls.getAndSet(0);
+            expiries = benchmark.provider.expiries.getAndSet(0);
+        }
+    }
+
+    @Benchmark
+    public String getAccessToken(Counters counters) {
+        return tokenManager.getAccessToken();
+    }
+}
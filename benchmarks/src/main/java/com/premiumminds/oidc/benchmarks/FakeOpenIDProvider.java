@@ -0,0 +1,65 @@
+package com.premiumminds.oidc.benchmarks;
+
+import com.premiumminds.oidc.OpenIDProvider;
+import com.premiumminds.oidc.Tokens;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process OpenID provider, with a configurable token lifetime and request latency
+ */
+public class FakeOpenIDProvider implements OpenIDProvider<String, String> {
+    private final long expiresIn;
+
+    private final long latencyNanos;
+
+    final AtomicLong calls = new AtomicLong();
+
+    /**
+     * Calls made once the last token issued had expired, as opposed to calls refreshing a token still valid
+     */
+    final AtomicLong expiries = new AtomicLong();
+
+    /**
+     * When the last token issued expires, as a {@link System#nanoTime()} value
+     */
+    private final AtomicLong validUntil = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param expiresIn
+     *         lifetime of the tokens in milliseconds, -1 if they never expire
+     * @param latency
+     *         time each request takes
+     * @param unit
+     *         latency unit
+     */
+    public FakeOpenIDProvider(long expiresIn, long latency, TimeUnit unit) {
+        this.expiresIn = expiresIn;
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    @Override
+    public Tokens<String, String> refreshToken(String refreshToken) {
+        return request();
+    }
+
+    @Override
+    public Tokens<String, String> grantToken() {
+        return request();
+    }
+
+    private Tokens<String, String> request() {
+        long call = calls.incrementAndGet();
+        long now = System.nanoTime();
+        long current = validUntil.get();
+        if (expiresIn >= 0 && now - current >= 0
+                && validUntil.compareAndSet(current, now + TimeUnit.MILLISECONDS.toNanos(expiresIn))) {
+            expiries.incrementAndGet();
+        }
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        return new Tokens<>("access-token-" + call, "refresh-token-" + call, expiresIn);
+    }
+}
@@ -0,0 +1,79 @@
+package com.premiumminds.oidc.benchmarks;
+
+import com.premiumminds.oidc.TokenManager;
+import com.premiumminds.oidc.TokenManagerImpl;
+import com.premiumminds.oidc.nimbus.HttpURLConnectionTransport;
+import com.premiumminds.oidc.nimbus.JavaHttpClientTransport;
+import com.premiumminds.oidc.nimbus.NimbusOIDCTokenManagerBuilder;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a {@code getAccessToken()} call that has to fetch new tokens, against an in-process provider and
+ * against a local HTTP token endpoint with each transport. The tokens are always inside the expire threshold, so
+ * every call goes to the provider.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RefreshLatencyBenchmark {
+    @Param({"fake", "http-url-connection", "java-http-client"})
+    public String provider;
+
+    private TokenEndpointStub stub;
+
+    private TokenManager<?> tokenManager;
+
+    @Setup
+    public void setup() throws IOException {
+        switch (provider) {
+            case "fake":
+                tokenManager = new TokenManagerImpl<>(new FakeOpenIDProvider(1000, 0, TimeUnit.MILLISECONDS), 5000);
+                break;
+            case "http-url-connection":
+                stub = new TokenEndpointStub(1);
+                tokenManager = nimbusBuilder().transport(new HttpURLConnectionTransport()).build();
+                break;
+            case "java-http-client":
+                stub = new TokenEndpointStub(1);
+                tokenManager = nimbusBuilder().transport(new JavaHttpClientTransport()).build();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown provider " + provider);
+        }
+    }
+
+    private NimbusOIDCTokenManagerBuilder nimbusBuilder() {
+        return new NimbusOIDCTokenManagerBuilder(stub.getTokenEndpoint(), "client_id")
+                .clientSecret("client_secret")
+                .expireThreshold(5000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tokenManager.close();
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Benchmark
+    public Object refresh() {
+        return tokenManager.getAccessToken();
+    }
+}
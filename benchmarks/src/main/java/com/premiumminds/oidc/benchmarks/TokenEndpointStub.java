@@ -0,0 +1,58 @@
+package com.premiumminds.oidc.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP token endpoint answering every request with a new access token
+ */
+public class TokenEndpointStub implements AutoCloseable {
+    private final HttpServer server;
+
+    /**
+     * @param expiresIn
+     *         value of expires_in in the responses, in seconds
+     * @throws IOException
+     *         if the server can't be started
+     */
+    public TokenEndpointStub(long expiresIn) throws IOException {
+        byte[] body = ("{\"access_token\":\"2YotnFZFEjr1zCsicMWpAA\",\"token_type\":\"Bearer\",\"expires_in\":"
+                + expiresIn + "}").getBytes(StandardCharsets.UTF_8);
+
+        // without it, the JDK server answers small requests after the 40ms delayed ACK of the client
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "token-endpoint-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/token", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.readAllBytes();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    public URI getTokenEndpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/token");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,89 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.oauth2.sdk.TokenResponse;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.RefreshToken;
+import com.nimbusds.openid.connect.sdk.OIDCTokenResponseParser;
+import com.premiumminds.oidc.Tokens;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing a token endpoint response with the Nimbus parser against the streaming {@link TokenResponseReader}. The
+ * responses look like Keycloak ones, with JWT access and refresh tokens and, optionally, an ID token. Run with
+ * {@code -prof gc} and compare {@code gc.alloc.rate.norm}.
+ * <p>
+ * It is in the {@code nimbus} package to reach the package private reader.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenResponseParsingBenchmark {
+    @Param({"false", "true"})
+    public boolean idToken;
+
+    private HTTPResponse response;
+
+    @Setup
+    public void setup() throws ParseException {
+        Random random = new Random(42);
+        StringBuilder body = new StringBuilder("{\"access_token\":\"").append(jwt(random))
+                .append("\",\"expires_in\":300,\"refresh_expires_in\":1800,\"refresh_token\":\"").append(jwt(random))
+                .append("\",\"token_type\":\"Bearer\",");
+        if (idToken) {
+            body.append("\"id_token\":\"").append(jwt(random)).append("\",");
+        }
+        body.append("\"not-before-policy\":0,\"session_state\":\"0b0d6c3c-3c1e-4f3e-9a43-7c1f1d4bbd51\","
+                + "\"scope\":\"openid profile email\"}");
+
+        response = new HTTPResponse(200);
+        response.setContentType("application/json");
+        response.setContent(body.toString());
+    }
+
+    @Benchmark
+    public TokenResponse nimbus() throws ParseException {
+        return OIDCTokenResponseParser.parse(response);
+    }
+
+    @Benchmark
+    public Tokens<BearerAccessToken, RefreshToken> streaming() {
+        return TokenResponseReader.read(response);
+    }
+
+    /**
+     * RS256 signed JWT of realistic size, with a random signature
+     */
+    private static String jwt(Random random) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = "{\"alg\":\"RS256\",\"typ\":\"JWT\",\"kid\":\"o0QvMuFq4hqPzbK7yV8hQmV4v9wYwYzq5jJw8yKp1dA\"}";
+        String claims = "{\"exp\":1700000300,\"iat\":1700000000,\"jti\":\"" + Long.toHexString(random.nextLong())
+                + "\",\"iss\":\"https://idp.example.com/realms/services\",\"aud\":[\"orders\",\"account\"],"
+                + "\"sub\":\"6f1b3c52-2f4e-4a7c-9d33-5b6e1f0a8c21\",\"typ\":\"Bearer\",\"azp\":\"orders-service\","
+                + "\"realm_access\":{\"roles\":[\"offline_access\",\"uma_authorization\",\"service\"]},"
+                + "\"scope\":\"openid profile email\",\"clientId\":\"orders-service\"}";
+        byte[] signature = new byte[256];
+        random.nextBytes(signature);
+        return encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(signature);
+    }
+}
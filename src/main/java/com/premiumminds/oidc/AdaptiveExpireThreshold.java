@@ -0,0 +1,93 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expire threshold that follows how long the requests for new tokens take: the 95th percentile of the recent
+ * requests plus a margin, between a minimum and a maximum. Too small a threshold lets the access token expire while
+ * new tokens are being fetched, too large a one renews short lived tokens far more often than needed.
+ * <p>
+ * Until enough requests were measured, the threshold is the maximum. Access tokens that live less than a minute get a
+ * threshold of at most a quarter of their lifetime, even if that is less than the minimum.
+ * <p>
+ * The same threshold can be shared by the token managers of the same provider, so it learns from all their requests.
+ */
+public class AdaptiveExpireThreshold {
+    private static final long SHORT_LIFETIME = 60000; // 1 minute
+
+    private static final double SHORT_LIFETIME_RATIO = 0.25;
+
+    private final LatencyTracker latencies = new LatencyTracker();
+
+    private final long margin;
+
+    private final long min;
+
+    private final long max;
+
+    private volatile long threshold;
+
+    /**
+     * Create a new adaptive threshold
+     *
+     * @param margin
+     *         time added to the 95th percentile of the request durations
+     * @param min
+     *         minimum threshold
+     * @param max
+     *         maximum threshold, and the threshold until enough requests were measured
+     * @param unit
+     *         time unit of margin, min and max
+     */
+    public AdaptiveExpireThreshold(long margin, long min, long max, TimeUnit unit) {
+        if (margin < 0 || min < 0) {
+            throw new IllegalArgumentException("margin and minimum must not be negative");
+        }
+        if (max < min) {
+            throw new IllegalArgumentException("maximum must not be less than the minimum");
+        }
+        this.margin = unit.toMillis(margin);
+        this.min = unit.toMillis(min);
+        this.max = unit.toMillis(max);
+        this.threshold = this.max;
+    }
+
+    /**
+     * Record the duration of a request for new tokens, successful or not
+     *
+     * @param durationNanos
+     *         request duration in nanoseconds
+     */
+    public void record(long durationNanos) {
+        latencies.sample(durationNanos);
+        long percentile = latencies.percentile95();
+        if (percentile >= 0) {
+            long adapted = TimeUnit.NANOSECONDS.toMillis(percentile) + margin;
+            threshold = Math.min(Math.max(adapted, min), max);
+        }
+    }
+
+    /**
+     * Get the current threshold, for monitoring
+     *
+     * @return threshold in milliseconds
+     */
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Get the threshold for an access token
+     *
+     * @param lifetime
+     *         lifetime of the access token in milliseconds, -1 if it never expires
+     * @return threshold in milliseconds
+     */
+    public long getThreshold(long lifetime) {
+        long current = threshold;
+        if (lifetime >= 0 && lifetime < SHORT_LIFETIME) {
+            return Math.min(current, (long) (lifetime * SHORT_LIFETIME_RATIO));
+        }
+        return current;
+    }
+}
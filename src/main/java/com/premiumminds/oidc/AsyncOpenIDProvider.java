@@ -0,0 +1,51 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public interface AsyncOpenIDProvider<T, R> {
+    /**
+     * This method should retrieve the tokens (access token, refresh token and expire time) from an OpenID Provider
+     * using the refresh token, without blocking the caller.
+     *
+     * @param refreshToken refresh token
+     * @return future completed with the tokens values
+     */
+    CompletableFuture<Tokens<T, R>> refreshTokenAsync(R refreshToken);
+
+    /**
+     * This method should retrieve the tokens (access token, refresh token and expire time) from an OpenID Provider,
+     * without blocking the caller. This can use whatever authentication request you want
+     *
+     * @return future completed with the tokens values
+     */
+    CompletableFuture<Tokens<T, R>> grantTokenAsync();
+
+    /**
+     * Adapt a blocking OpenID provider, running its requests in the given executor. If the provider already is an
+     * {@link AsyncOpenIDProvider}, it is returned as is.
+     *
+     * @param provider blocking OpenID provider
+     * @param executor executor to run the blocking requests
+     * @param <T> token type
+     * @param <R> refresh token type
+     * @return the asynchronous OpenID provider
+     */
+    @SuppressWarnings("unchecked")
+    static <T, R> AsyncOpenIDProvider<T, R> of(OpenIDProvider<T, R> provider, Executor executor) {
+        if (provider instanceof AsyncOpenIDProvider) {
+            return (AsyncOpenIDProvider<T, R>) provider;
+        }
+        return new AsyncOpenIDProvider<T, R>() {
+            @Override
+            public CompletableFuture<Tokens<T, R>> refreshTokenAsync(R refreshToken) {
+                return CompletableFuture.supplyAsync(() -> provider.refreshToken(refreshToken), executor);
+            }
+
+            @Override
+            public CompletableFuture<Tokens<T, R>> grantTokenAsync() {
+                return CompletableFuture.supplyAsync(provider::grantToken, executor);
+            }
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Token manager that can retrieve the access token without blocking the caller.
+ * <p>
+ * Example:
+ * <pre>
+ *     AsyncTokenManager&lt;BearerAccessToken&gt; tokenManager =
+ *          new NimbusOIDCTokenManagerBuilder(oidcMetadata, "client_id").clientSecret("client_secret").buildAsync();
+ *     tokenManager.getAccessTokenAsync().thenAccept(token -&gt; ...);
+ * </pre>
+ *
+ * @param <T>
+ *         token type
+ */
+public interface AsyncTokenManager<T> extends TokenManager<T> {
+    /**
+     * Retrieve access token. If no access token in cache or expired access token, it will try to retrieve it
+     * without blocking the caller. Concurrent callers share the same request to the provider.
+     * <p>
+     * When the access token is in cache, the returned future is already completed. The returned future may be shared
+     * between callers, so it must not be completed or cancelled.
+     *
+     * @return future completed with the access token
+     */
+    CompletableFuture<T> getAccessTokenAsync();
+}
@@ -0,0 +1,104 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * {@code Authorization} header values of the access tokens of a token manager, for HTTP client integrations.
+ * <p>
+ * The header value is rendered once for each access token and then reused, so adding it to a request doesn't
+ * allocate while the access token is valid.
+ * <p>
+ * Example:
+ * <pre>
+ *     AuthorizationHeaders&lt;BearerAccessToken&gt; headers =
+ *          new AuthorizationHeaders&lt;&gt;(tokenManager, BearerAccessToken::toAuthorizationHeader);
+ * </pre>
+ *
+ * @param <T>
+ *         token type
+ */
+public class AuthorizationHeaders<T> {
+    private final TokenManager<T> tokenManager;
+
+    private final Function<T, String> render;
+
+    private volatile Header<T> cached;
+
+    /**
+     * Create new authorization headers
+     *
+     * @param tokenManager
+     *         token manager
+     * @param render
+     *         renders the header value of an access token, for example {@code "Bearer " + token}
+     */
+    public AuthorizationHeaders(TokenManager<T> tokenManager, Function<T, String> render) {
+        this.tokenManager = tokenManager;
+        this.render = render;
+    }
+
+    /**
+     * Get the header value of the current access token. This method can have blocking IO.
+     *
+     * @return header value
+     */
+    public String get() {
+        return header(tokenManager.getAccessToken()).value;
+    }
+
+    /**
+     * Get the header value of the current access token without blocking the caller, if the token manager is an
+     * {@link AsyncTokenManager}.
+     *
+     * @return future completed with the header value
+     */
+    public CompletableFuture<String> getAsync() {
+        if (!(tokenManager instanceof AsyncTokenManager)) {
+            return header(tokenManager.getAccessToken()).future;
+        }
+        CompletableFuture<T> accessToken = ((AsyncTokenManager<T>) tokenManager).getAccessTokenAsync();
+        T token = accessToken.getNow(null);
+        if (token != null) {
+            return header(token).future;
+        }
+        return accessToken.thenApply(fetched -> header(fetched).value);
+    }
+
+    /**
+     * Discard the access token rejected with this header value, unless it was already replaced.
+     *
+     * @param value
+     *         rejected header value, as returned by {@link #get()}
+     * @see TokenManager#invalidate(Object)
+     */
+    public void invalidate(String value) {
+        Header<T> current = cached;
+        if (current != null && current.value.equals(value)) {
+            tokenManager.invalidate(current.accessToken);
+        }
+    }
+
+    private Header<T> header(T accessToken) {
+        Header<T> current = cached;
+        if (current == null || current.accessToken != accessToken) {
+            current = new Header<>(accessToken, render.apply(accessToken));
+            cached = current;
+        }
+        return current;
+    }
+
+    private static final class Header<T> {
+        private final T accessToken;
+
+        private final String value;
+
+        private final CompletableFuture<String> future;
+
+        private Header(T accessToken, String value) {
+            this.accessToken = accessToken;
+            this.value = value;
+            this.future = CompletableFuture.completedFuture(value);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Failure tracking of one token manager, following a {@link ResiliencePolicy}. Times are {@link TokenClock#nanoTime()}
+ * values.
+ */
+final class CircuitBreaker {
+    private final ResiliencePolicy policy;
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicBoolean retryScheduled = new AtomicBoolean();
+
+    private volatile long nextAttemptAt;
+
+    private volatile long openUntil;
+
+    private volatile Throwable lastFailure;
+
+    CircuitBreaker(ResiliencePolicy policy) {
+        this.policy = policy;
+    }
+
+    ResiliencePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return if a background fetch can start now, that is, the backoff has passed and the circuit is not open
+     */
+    boolean allowBackgroundAttempt(long now) {
+        return failures.get() == 0 || (now - nextAttemptAt >= 0 && !isOpen(now));
+    }
+
+    boolean isOpen(long now) {
+        return failures.get() >= policy.getFailureThreshold() && now - openUntil < 0;
+    }
+
+    /**
+     * @return milliseconds until the circuit closes, 0 if it's not open
+     */
+    long remainingOpen(long now) {
+        return isOpen(now) ? TimeUnit.NANOSECONDS.toMillis(openUntil - now) : 0;
+    }
+
+    Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    void onSuccess() {
+        if (failures.get() != 0) {
+            failures.set(0);
+            lastFailure = null;
+        }
+    }
+
+    /**
+     * @return backoff before the next background attempt, in milliseconds
+     */
+    long onFailure(Throwable failure, long now) {
+        long backoff = policy.backoff(failures.get() + 1);
+        lastFailure = failure;
+        nextAttemptAt = now + TimeUnit.MILLISECONDS.toNanos(backoff);
+        if (failures.get() + 1 >= policy.getFailureThreshold()) {
+            openUntil = now + TimeUnit.MILLISECONDS.toNanos(policy.getOpenDuration());
+        }
+        // counted last, so whoever sees the new count also sees the deadlines
+        failures.incrementAndGet();
+        return backoff;
+    }
+
+    /**
+     * Claim the single pending retry
+     *
+     * @return true if there was no retry scheduled
+     */
+    boolean claimRetry() {
+        return retryScheduled.compareAndSet(false, true);
+    }
+
+    void releaseRetry() {
+        retryScheduled.set(false);
+    }
+}
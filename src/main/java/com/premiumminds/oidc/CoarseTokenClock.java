@@ -0,0 +1,55 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock that reads the system clock once every {@code resolution} instead of on every call, so checking if a token
+ * expired is a single memory read.
+ * <p>
+ * The time can lag behind up to the resolution, so the token managers using this clock should have an expire
+ * threshold larger than it.
+ */
+public class CoarseTokenClock implements TokenClock, AutoCloseable {
+    private final ScheduledFuture<?> updates;
+
+    private volatile long nanoTime = System.nanoTime();
+
+    private volatile long currentTimeMillis = System.currentTimeMillis();
+
+    /**
+     * Create a new coarse clock, updated until closed
+     *
+     * @param scheduler
+     *         scheduler to update the clock
+     * @param resolution
+     *         time between updates
+     * @param unit
+     *         resolution unit
+     */
+    public CoarseTokenClock(ScheduledExecutorService scheduler, long resolution, TimeUnit unit) {
+        this.updates = scheduler.scheduleAtFixedRate(() -> {
+            nanoTime = System.nanoTime();
+            currentTimeMillis = System.currentTimeMillis();
+        }, resolution, resolution, unit);
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * Stop updating the clock
+     */
+    @Override
+    public void close() {
+        updates.cancel(false);
+    }
+}
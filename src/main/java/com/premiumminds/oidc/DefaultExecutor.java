@@ -0,0 +1,21 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Executor of the asynchronous requests to providers that can only block, when none is given: the common fork join
+ * pool. On Java 21 or later, each request runs in a new virtual thread instead, so blocking doesn't hold platform
+ * threads.
+ */
+public final class DefaultExecutor {
+    private DefaultExecutor() {
+    }
+
+    /**
+     * @return the default executor
+     */
+    public static Executor get() {
+        return ForkJoinPool.commonPool();
+    }
+}
@@ -0,0 +1,105 @@
+package com.premiumminds.oidc;
+
+/**
+ * What a token manager does when a request to the OpenID provider fails, depending on the {@link ProviderErrorKind}.
+ * <p>
+ * Whatever the policy says, no new request is sent once the token manager deadline has passed.
+ *
+ * @see TokenManagerImpl#fallbackPolicy(FallbackPolicy)
+ * @see TokenManagerImpl#deadline(long, java.util.concurrent.TimeUnit)
+ */
+public interface FallbackPolicy {
+    /**
+     * Decide what to do after the refresh token request failed
+     *
+     * @param kind
+     *         why the request failed
+     * @param failures
+     *         number of failed requests so far while fetching these tokens, including this one
+     * @return what to do next
+     */
+    Action onRefreshFailure(ProviderErrorKind kind, int failures);
+
+    /**
+     * Decide what to do after the grant request failed. {@link Action#GRANT} is the same as {@link Action#RETRY}.
+     *
+     * @param kind
+     *         why the request failed
+     * @param failures
+     *         number of failed requests so far while fetching these tokens, including this one
+     * @return what to do next
+     */
+    Action onGrantFailure(ProviderErrorKind kind, int failures);
+
+    /**
+     * Only fall back to the grant when the refresh token was rejected (or the failure is not classified), or the
+     * connection was lost once the refresh token may have been sent, retry the other transient failures but timeouts
+     * up to {@code retries} times, and fail on anything else. Timeouts are not retried: the caller already waited the
+     * whole timeout, and the request may have reached the provider.
+     *
+     * @param retries
+     *         maximum number of retries of transient failures
+     * @return the fallback policy
+     */
+    static FallbackPolicy retrying(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("retries must not be negative");
+        }
+        return new FallbackPolicy() {
+            @Override
+            public Action onRefreshFailure(ProviderErrorKind kind, int failures) {
+                if (kind == ProviderErrorKind.INVALID_GRANT || kind == ProviderErrorKind.OTHER
+                        || kind == ProviderErrorKind.CONNECTION_LOST) {
+                    // sending a refresh token the provider may have rotated already would be a replay
+                    return Action.GRANT;
+                }
+                return onGrantFailure(kind, failures);
+            }
+
+            @Override
+            public Action onGrantFailure(ProviderErrorKind kind, int failures) {
+                return kind.isTransient() && kind != ProviderErrorKind.TIMEOUT && failures <= retries ? Action.RETRY
+                        : Action.FAIL;
+            }
+        };
+    }
+
+    /**
+     * Fall back to the grant whenever the refresh token request fails, and never retry. This was the behaviour before
+     * failures were classified.
+     *
+     * @return the fallback policy
+     */
+    static FallbackPolicy alwaysGrant() {
+        return new FallbackPolicy() {
+            @Override
+            public Action onRefreshFailure(ProviderErrorKind kind, int failures) {
+                return Action.GRANT;
+            }
+
+            @Override
+            public Action onGrantFailure(ProviderErrorKind kind, int failures) {
+                return Action.FAIL;
+            }
+        };
+    }
+
+    /**
+     * What to do after a failed request
+     */
+    enum Action {
+        /**
+         * Send the same request again, after a short backoff
+         */
+        RETRY,
+        /**
+         * Request new tokens with the grant
+         */
+        GRANT,
+        /**
+         * Fail the fetch with the last failure. Callers with an access token that has not really expired keep
+         * getting it, if the token manager has a {@link ResiliencePolicy}.
+         */
+        FAIL
+    }
+}
@@ -0,0 +1,265 @@
+package com.premiumminds.oidc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Token store in a file, to share the tokens between JVMs with access to the same file system (for example a shared
+ * volume), or to keep them across restarts.
+ * <p>
+ * The tokens file is replaced atomically, so readers never see a partial write. The lease is a {@link FileLock} on a
+ * {@code .lock} file next to it, released by the operating system if its holder dies.
+ * <p>
+ * With a secret key, the tokens are encrypted with AES-GCM. A file that was tampered with, or encrypted with another
+ * key, counts as no tokens.
+ *
+ * @param <T>
+ *         token type
+ * @param <R>
+ *         refresh token type
+ */
+public class FileTokenStore<T, R> implements TokenStore<T, R> {
+    private static final int MAGIC = 0x4f494443; // "OIDC"
+
+    private static final byte VERSION = 1;
+
+    private static final byte PLAIN = 0;
+
+    private static final byte ENCRYPTED = 1;
+
+    private static final int HEADER_LENGTH = 6;
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_LENGTH = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path file;
+
+    private final Path lockFile;
+
+    private final TokenCodec<T> accessTokenCodec;
+
+    private final TokenCodec<R> refreshTokenCodec;
+
+    private final SecretKey key;
+
+    /**
+     * Create a new file token store
+     *
+     * @param file
+     *         tokens file, created on the first save
+     * @param accessTokenCodec
+     *         converts the access token to and from text
+     * @param refreshTokenCodec
+     *         converts the refresh token to and from text
+     */
+    public FileTokenStore(Path file, TokenCodec<T> accessTokenCodec, TokenCodec<R> refreshTokenCodec) {
+        this(file, accessTokenCodec, refreshTokenCodec, null);
+    }
+
+    /**
+     * Create a new file token store, encrypting the tokens
+     *
+     * @param file
+     *         tokens file, created on the first save
+     * @param accessTokenCodec
+     *         converts the access token to and from text
+     * @param refreshTokenCodec
+     *         converts the refresh token to and from text
+     * @param key
+     *         AES key to encrypt the tokens, or null to keep them in plain text
+     */
+    public FileTokenStore(Path file, TokenCodec<T> accessTokenCodec, TokenCodec<R> refreshTokenCodec,
+            SecretKey key) {
+        this.file = file.toAbsolutePath();
+        this.lockFile = this.file.resolveSibling(this.file.getFileName() + ".lock");
+        this.accessTokenCodec = accessTokenCodec;
+        this.refreshTokenCodec = refreshTokenCodec;
+        this.key = key;
+    }
+
+    /**
+     * Read the stored tokens. A file that can't be read, or was written in an unknown format, counts as no tokens.
+     *
+     * @return the stored tokens, or null if there are none
+     */
+    @Override
+    public StoredTokens<T, R> load() {
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            content = ByteBuffer.allocate((int) size);
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            // through Buffer, so it also runs on Java 8
+            ((Buffer) content).flip();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try {
+            if (content.getInt() != MAGIC || content.get() != VERSION) {
+                return null;
+            }
+            byte format = content.get();
+            if (format == ENCRYPTED && key != null) {
+                content = decrypt(content);
+            } else if (format != PLAIN || key != null) {
+                return null;
+            }
+            long fetchedAt = content.getLong();
+            long expiresAt = content.getLong();
+            T accessToken = accessTokenCodec.decode(readString(content));
+            R refreshToken = content.get() != 0 ? refreshTokenCodec.decode(readString(content)) : null;
+            return new StoredTokens<>(accessToken, refreshToken, fetchedAt, expiresAt);
+        } catch (BufferUnderflowException | IllegalArgumentException | GeneralSecurityException e) {
+            // truncated, corrupted or encrypted with another key
+            return null;
+        }
+    }
+
+    @Override
+    public void save(StoredTokens<T, R> tokens) {
+        byte[] accessToken = accessTokenCodec.encode(tokens.getAccessToken()).getBytes(StandardCharsets.UTF_8);
+        byte[] refreshToken = tokens.getRefreshToken() != null ?
+                refreshTokenCodec.encode(tokens.getRefreshToken()).getBytes(StandardCharsets.UTF_8) :
+                null;
+
+        ByteBuffer body = ByteBuffer.allocate(
+                8 + 8 + 4 + accessToken.length + 1 + (refreshToken != null ? 4 + refreshToken.length : 0));
+        body.putLong(tokens.getFetchedAt());
+        body.putLong(tokens.getExpiresAt());
+        body.putInt(accessToken.length).put(accessToken);
+        body.put((byte) (refreshToken != null ? 1 : 0));
+        if (refreshToken != null) {
+            body.putInt(refreshToken.length).put(refreshToken);
+        }
+        ((Buffer) body).flip();
+
+        ByteBuffer content;
+        try {
+            content = key != null ? encrypt(body) : header(PLAIN, body.remaining()).put(body);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("unable to encrypt the tokens", e);
+        }
+        ((Buffer) content).flip();
+
+        try {
+            // created readable only by the owner, where the file system supports it
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    while (content.hasRemaining()) {
+                        channel.write(content);
+                    }
+                    channel.force(false);
+                }
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Lease tryLease() {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another token manager in this JVM
+            lock = null;
+        } catch (IOException e) {
+            close(channel);
+            throw new UncheckedIOException(e);
+        }
+        if (lock == null) {
+            close(channel);
+            return null;
+        }
+        return () -> close(channel); // closing the channel releases the lock
+    }
+
+    private ByteBuffer encrypt(ByteBuffer body) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+
+        ByteBuffer content = header(ENCRYPTED, IV_LENGTH + cipher.getOutputSize(body.remaining()));
+        cipher.updateAAD(content.array(), 0, HEADER_LENGTH);
+        content.put(iv);
+        cipher.doFinal(body, content);
+        return content;
+    }
+
+    private ByteBuffer decrypt(ByteBuffer content) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        content.get(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+        cipher.updateAAD(content.array(), 0, HEADER_LENGTH);
+
+        ByteBuffer body = ByteBuffer.allocate(cipher.getOutputSize(content.remaining()));
+        cipher.doFinal(content, body);
+        ((Buffer) body).flip();
+        return body;
+    }
+
+    private static ByteBuffer header(byte format, int bodyLength) {
+        return ByteBuffer.allocate(HEADER_LENGTH + bodyLength).putInt(MAGIC).put(VERSION).put(format);
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String readString(ByteBuffer content) {
+        int length = content.getInt();
+        if (length < 0 || length > content.remaining()) {
+            throw new IllegalArgumentException("invalid length " + length);
+        }
+        String value = new String(content.array(), content.arrayOffset() + content.position(), length,
+                StandardCharsets.UTF_8);
+        ((Buffer) content).position(content.position() + length);
+        return value;
+    }
+}
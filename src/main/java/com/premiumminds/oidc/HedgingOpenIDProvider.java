@@ -0,0 +1,290 @@
+package com.premiumminds.oidc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * OpenID provider that spreads the requests over several token endpoints of the same provider, for example one for
+ * each region, preferring the fastest healthy one.
+ * <p>
+ * The response times of each endpoint are tracked with a moving average, and an endpoint that fails is avoided for a
+ * while, with exponential backoff. A request that fails with a transient error is sent right away to the next
+ * endpoint. A grant request not answered within the 95th percentile of the recent response times of its endpoint is
+ * hedged: a second request is sent to the next endpoint and the first success wins.
+ * <p>
+ * Refresh token requests are never hedged by default, since providers that rotate refresh tokens may take two
+ * requests with the same refresh token as a replay and revoke it. For the same reason they are only sent to the next
+ * endpoint when the connection could not be made, since the first endpoint never got them then.
+ *
+ * @param <T>
+ *         token type
+ * @param <R>
+ *         refresh token type
+ */
+public class HedgingOpenIDProvider<T, R> implements OpenIDProvider<T, R>, AsyncOpenIDProvider<T, R> {
+    private static final long MIN_HEDGE_DELAY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<Endpoint<T, R>> endpoints = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long initialHedgeDelay;
+
+    private TokenMetrics metrics = TokenMetrics.NOOP;
+
+    private boolean hedgeRefreshes;
+
+    /**
+     * Create a new hedging provider, sending the hedged requests from a scheduler shared by every hedging provider
+     *
+     * @param providers
+     *         one provider for each token endpoint, the preferred one first
+     * @param initialHedgeDelay
+     *         time to wait before hedging a request to an endpoint with too few responses to know its latency
+     * @param unit
+     *         time unit of initialHedgeDelay
+     */
+    public HedgingOpenIDProvider(List<? extends AsyncOpenIDProvider<T, R>> providers, long initialHedgeDelay,
+            TimeUnit unit) {
+        this(providers, SharedScheduler.INSTANCE, initialHedgeDelay, unit);
+    }
+
+    /**
+     * Create a new hedging provider
+     *
+     * @param providers
+     *         one provider for each token endpoint, the preferred one first
+     * @param scheduler
+     *         scheduler to send the hedged requests
+     * @param initialHedgeDelay
+     *         time to wait before hedging a request to an endpoint with too few responses to know its latency
+     * @param unit
+     *         time unit of initialHedgeDelay
+     */
+    public HedgingOpenIDProvider(List<? extends AsyncOpenIDProvider<T, R>> providers,
+            ScheduledExecutorService scheduler, long initialHedgeDelay, TimeUnit unit) {
+        if (providers.isEmpty()) {
+            throw new IllegalArgumentException("at least one provider is needed");
+        }
+        for (int i = 0; i < providers.size(); i++) {
+            endpoints.add(new Endpoint<>(providers.get(i), i));
+        }
+        this.scheduler = scheduler;
+        this.initialHedgeDelay = unit.toNanos(initialHedgeDelay);
+    }
+
+    /**
+     * Set the listener of the hedged requests. This should be called before the provider is used.
+     * <p>
+     * Default: {@link TokenMetrics#NOOP}
+     *
+     * @param metrics
+     *         metrics listener
+     * @return this provider
+     */
+    public HedgingOpenIDProvider<T, R> metrics(TokenMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Hedge the refresh token requests too, and send them to the next endpoint on any transient error. Only for
+     * providers that don't rotate refresh tokens, or accept the same refresh token more than once. This should be
+     * called before the provider is used.
+     *
+     * @return this provider
+     */
+    public HedgingOpenIDProvider<T, R> hedgeRefreshes() {
+        this.hedgeRefreshes = true;
+        return this;
+    }
+
+    @Override
+    public Tokens<T, R> refreshToken(R refreshToken) {
+        return await(refreshTokenAsync(refreshToken));
+    }
+
+    @Override
+    public Tokens<T, R> grantToken() {
+        return await(grantTokenAsync());
+    }
+
+    @Override
+    public CompletableFuture<Tokens<T, R>> refreshTokenAsync(R refreshToken) {
+        return new Request(provider -> provider.refreshTokenAsync(refreshToken), hedgeRefreshes).start();
+    }
+
+    @Override
+    public CompletableFuture<Tokens<T, R>> grantTokenAsync() {
+        return new Request(AsyncOpenIDProvider::grantTokenAsync, true).start();
+    }
+
+    /**
+     * @return the endpoints in the order to try them: the healthy ones by average response time, the ones without
+     *         responses yet in their configured order, and the ones failing last
+     */
+    private List<Endpoint<T, R>> ranked(long now) {
+        List<Endpoint<T, R>> ranked = new ArrayList<>(endpoints);
+        Collections.sort(ranked, Comparator.<Endpoint<T, R>, Boolean>comparing(e -> !e.tracker.healthy(now))
+                .thenComparingDouble(e -> {
+                    double average = e.tracker.average();
+                    return average < 0 ? Double.MAX_VALUE : average;
+                })
+                .thenComparingInt(e -> e.index));
+        return ranked;
+    }
+
+    private static <S> S await(CompletableFuture<S> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * One request for tokens, sent to one endpoint after the other until one answers
+     */
+    private final class Request {
+        private final Function<AsyncOpenIDProvider<T, R>, CompletableFuture<Tokens<T, R>>> call;
+
+        /**
+         * If the request can be sent more than once: hedged, and failed over on any transient error, not only when
+         * the connection could not be made
+         */
+        private final boolean replayable;
+
+        private final CompletableFuture<Tokens<T, R>> result = new CompletableFuture<>();
+
+        private final List<Endpoint<T, R>> candidates;
+
+        private int next;
+
+        private int outstanding;
+
+        private boolean hedged;
+
+        private Request(Function<AsyncOpenIDProvider<T, R>, CompletableFuture<Tokens<T, R>>> call,
+                boolean replayable) {
+            this.call = call;
+            this.replayable = replayable;
+            this.candidates = ranked(System.nanoTime());
+        }
+
+        private CompletableFuture<Tokens<T, R>> start() {
+            send();
+            return result;
+        }
+
+        private void send() {
+            Endpoint<T, R> endpoint;
+            boolean canHedge;
+            synchronized (this) {
+                if (result.isDone() || next >= candidates.size()) {
+                    return;
+                }
+                endpoint = candidates.get(next++);
+                outstanding++;
+                canHedge = replayable && !hedged && next < candidates.size();
+            }
+
+            long start = System.nanoTime();
+            CompletableFuture<Tokens<T, R>> response;
+            try {
+                response = call.apply(endpoint.provider);
+            } catch (RuntimeException e) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+            response.whenComplete((tokens, e) -> onResponse(endpoint, start, tokens, e));
+
+            if (canHedge && !response.isDone()) {
+                long p95 = endpoint.tracker.percentile95();
+                long delay = Math.max(p95 >= 0 ? p95 : initialHedgeDelay, MIN_HEDGE_DELAY);
+                try {
+                    scheduler.schedule(this::sendHedge, delay, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // scheduler is shutdown, no hedging but still failing over
+                }
+            }
+        }
+
+        private void sendHedge() {
+            synchronized (this) {
+                if (result.isDone() || hedged) {
+                    return;
+                }
+                hedged = true;
+            }
+            metrics.hedge();
+            send();
+        }
+
+        private void onResponse(Endpoint<T, R> endpoint, long start, Tokens<T, R> tokens, Throwable e) {
+            long now = System.nanoTime();
+            if (e == null) {
+                endpoint.tracker.success(now - start);
+                result.complete(tokens);
+                return;
+            }
+            Throwable failure = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            ProviderErrorKind kind = ProviderErrorKind.of(failure);
+            if (kind.isTransient()) {
+                endpoint.tracker.failure(now);
+            }
+            // a request that timed out or lost its connection may have reached the provider, which may have rotated
+            // the refresh token
+            boolean retriable = replayable ? kind.isTransient() : kind == ProviderErrorKind.CONNECTION;
+            boolean failover;
+            synchronized (this) {
+                outstanding--;
+                failover = retriable && next < candidates.size();
+                if (!failover && (!retriable || outstanding == 0)) {
+                    // the provider said no, or there is nowhere else to go
+                    result.completeExceptionally(failure);
+                    return;
+                }
+            }
+            if (failover) {
+                send();
+            }
+        }
+    }
+
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oidc-token-hedging");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Endpoint<T, R> {
+        private final AsyncOpenIDProvider<T, R> provider;
+
+        private final int index;
+
+        private final LatencyTracker tracker = new LatencyTracker();
+
+        private Endpoint(AsyncOpenIDProvider<T, R> provider, int index) {
+            this.provider = provider;
+            this.index = index;
+        }
+    }
+}
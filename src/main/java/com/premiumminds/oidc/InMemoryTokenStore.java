@@ -0,0 +1,71 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token store kept in memory, to share the tokens between token managers in the same JVM.
+ * <p>
+ * The lease expires by itself after {@code leaseDuration}, in case its holder never releases it.
+ *
+ * @param <T>
+ *         token type
+ * @param <R>
+ *         refresh token type
+ */
+public class InMemoryTokenStore<T, R> implements TokenStore<T, R> {
+    private final AtomicReference<StoredTokens<T, R>> tokens = new AtomicReference<>();
+
+    /**
+     * When the current lease expires, 0 if there is none
+     */
+    private final AtomicLong leaseUntil = new AtomicLong();
+
+    private final long leaseDuration;
+
+    /**
+     * Create a new in memory token store, with leases of 30 seconds
+     */
+    public InMemoryTokenStore() {
+        this(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create a new in memory token store
+     *
+     * @param leaseDuration
+     *         time after which a lease not released expires, longer than a request to the provider
+     * @param unit
+     *         lease duration unit
+     */
+    public InMemoryTokenStore(long leaseDuration, TimeUnit unit) {
+        this.leaseDuration = unit.toMillis(leaseDuration);
+    }
+
+    @Override
+    public StoredTokens<T, R> load() {
+        return tokens.get();
+    }
+
+    @Override
+    public void save(StoredTokens<T, R> tokens) {
+        this.tokens.set(tokens);
+    }
+
+    @Override
+    public Lease tryLease() {
+        while (true) {
+            long now = System.currentTimeMillis();
+            long until = leaseUntil.get();
+            if (until > now) {
+                return null;
+            }
+            long mine = now + leaseDuration;
+            if (leaseUntil.compareAndSet(until, mine)) {
+                // only release our own lease, not one taken after ours expired
+                return () -> leaseUntil.compareAndSet(mine, 0);
+            }
+        }
+    }
+}
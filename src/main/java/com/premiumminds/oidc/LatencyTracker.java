@@ -0,0 +1,79 @@
+package com.premiumminds.oidc;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and health of one token endpoint: an exponentially weighted moving average of the response times, the 95th
+ * percentile of the last responses, and how long to avoid the endpoint after consecutive failures.
+ */
+final class LatencyTracker {
+    private static final double ALPHA = 0.3;
+
+    private static final int SAMPLES = 32;
+
+    private static final int MIN_SAMPLES = 8;
+
+    private static final long MIN_BACKOFF = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toNanos(1);
+
+    private final long[] samples = new long[SAMPLES];
+
+    private int next;
+
+    private int count;
+
+    private double average = -1;
+
+    private int failures;
+
+    private long unhealthyUntil;
+
+    synchronized void success(long latency) {
+        sample(latency);
+        failures = 0;
+    }
+
+    /**
+     * Record a response time without changing the health of the endpoint
+     */
+    synchronized void sample(long latency) {
+        samples[next] = latency;
+        next = (next + 1) % SAMPLES;
+        count = Math.min(count + 1, SAMPLES);
+        average = average < 0 ? latency : ALPHA * latency + (1 - ALPHA) * average;
+    }
+
+    synchronized void failure(long now) {
+        failures++;
+        long backoff = MIN_BACKOFF << Math.min(failures - 1, 6);
+        unhealthyUntil = now + Math.min(backoff, MAX_BACKOFF);
+    }
+
+    /**
+     * @return if the endpoint has not failed recently
+     */
+    synchronized boolean healthy(long now) {
+        return failures == 0 || now - unhealthyUntil >= 0;
+    }
+
+    /**
+     * @return moving average of the response times in nanoseconds, or -1 if there is none yet
+     */
+    synchronized double average() {
+        return average;
+    }
+
+    /**
+     * @return 95th percentile of the last response times in nanoseconds, or -1 if there are too few of them
+     */
+    synchronized long percentile95() {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(count * 0.95) - 1];
+    }
+}
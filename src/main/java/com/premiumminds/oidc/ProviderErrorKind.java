@@ -0,0 +1,75 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * Why a request to the OpenID provider failed, to decide what to do next.
+ *
+ * @see FallbackPolicy
+ */
+public enum ProviderErrorKind {
+    /**
+     * Timed out connecting to the token endpoint or reading its response
+     */
+    TIMEOUT(true),
+    /**
+     * Could not connect to the token endpoint, so the request was never sent
+     */
+    CONNECTION(true),
+    /**
+     * The connection failed once connected, for example reset by the token endpoint, so the request may have been
+     * received
+     */
+    CONNECTION_LOST(true),
+    /**
+     * The token endpoint answered with a 5xx status, or with a {@code server_error} or
+     * {@code temporarily_unavailable} error
+     */
+    SERVER_ERROR(true),
+    /**
+     * The provider rejected the grant, for example an expired or revoked refresh token
+     */
+    INVALID_GRANT(false),
+    /**
+     * The provider rejected the client credentials
+     */
+    INVALID_CLIENT(false),
+    /**
+     * The token endpoint response could not be parsed
+     */
+    PARSE(false),
+    /**
+     * Any other failure, including failures of providers that don't classify them
+     */
+    OTHER(false);
+
+    private final boolean transientError;
+
+    ProviderErrorKind(boolean transientError) {
+        this.transientError = transientError;
+    }
+
+    /**
+     * @return if the same request may succeed if sent again
+     */
+    public boolean isTransient() {
+        return transientError;
+    }
+
+    /**
+     * Get the kind of a failure of the OpenID provider
+     *
+     * @param failure
+     *         failure, possibly wrapped in a {@link CompletionException}
+     * @return the kind of the {@link ProviderRequestException}, or {@link #OTHER} for any other failure
+     */
+    public static ProviderErrorKind of(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure instanceof ProviderRequestException) {
+            return ((ProviderRequestException) failure).getKind();
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,25 @@
+package com.premiumminds.oidc;
+
+/**
+ * A request to the OpenID provider failed.
+ */
+public class ProviderRequestException extends RuntimeException {
+    private final ProviderErrorKind kind;
+
+    public ProviderRequestException(ProviderErrorKind kind, String message) {
+        super(message);
+        this.kind = kind;
+    }
+
+    public ProviderRequestException(ProviderErrorKind kind, String message, Throwable cause) {
+        super(message, cause);
+        this.kind = kind;
+    }
+
+    /**
+     * @return why the request failed
+     */
+    public ProviderErrorKind getKind() {
+        return kind;
+    }
+}
@@ -0,0 +1,138 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How a token manager behaves when the OpenID provider is slow or failing.
+ * <p>
+ * Once the access token passes the expire threshold, callers keep getting it while new tokens are fetched in
+ * background, until the access token really expires. That is the hard deadline: from then on callers wait for new
+ * tokens, or get an error.
+ * <p>
+ * Failed background fetches are retried with exponential backoff and jitter. After {@code failureThreshold}
+ * consecutive failures the circuit opens: for {@code openDuration} nobody calls the provider, and callers without a
+ * valid access token fail fast with a {@link TokenUnavailableException}.
+ */
+public class ResiliencePolicy {
+    private final ScheduledExecutorService scheduler;
+
+    private long initialBackoff = 500; // default 500 milliseconds
+
+    private long maxBackoff = 30000; // default 30 seconds
+
+    private double jitter = 0.2; // default 20% of the backoff
+
+    private int failureThreshold = 5;
+
+    private long openDuration = 30000; // default 30 seconds
+
+    /**
+     * Create a new resilience policy
+     *
+     * @param scheduler
+     *         scheduler to run the retries. It's not shutdown by the token manager.
+     */
+    public ResiliencePolicy(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Set the backoff between retries: the first retry waits {@code initial}, and each following one twice as much,
+     * up to {@code max}.
+     * <p>
+     * Default: 500 milliseconds up to 30 seconds
+     *
+     * @param initial
+     *         backoff of the first retry, at least 1 millisecond
+     * @param max
+     *         maximum backoff
+     * @param unit
+     *         backoff unit
+     * @return this policy
+     */
+    public ResiliencePolicy backoff(long initial, long max, TimeUnit unit) {
+        long initialMillis = unit.toMillis(initial);
+        long maxMillis = unit.toMillis(max);
+        if (initialMillis <= 0 || maxMillis < initialMillis) {
+            throw new IllegalArgumentException(
+                    "backoff must be at least 1 millisecond and initial not greater than max");
+        }
+        this.initialBackoff = initialMillis;
+        this.maxBackoff = maxMillis;
+        return this;
+    }
+
+    /**
+     * Set the fraction of the backoff that is randomly added or subtracted.
+     * <p>
+     * Default: 0.2
+     *
+     * @param jitter
+     *         value between 0 and 1
+     * @return this policy
+     */
+    public ResiliencePolicy jitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Set when the circuit opens and for how long.
+     * <p>
+     * Default: 5 consecutive failures, open for 30 seconds
+     *
+     * @param failureThreshold
+     *         consecutive failures that open the circuit
+     * @param openDuration
+     *         time the circuit stays open, at least 1 millisecond
+     * @param unit
+     *         open duration unit
+     * @return this policy
+     */
+    public ResiliencePolicy circuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failure threshold must be positive");
+        }
+        long openMillis = unit.toMillis(openDuration);
+        if (openMillis <= 0) {
+            throw new IllegalArgumentException("open duration must be at least 1 millisecond");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openMillis;
+        return this;
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * Backoff before the next attempt, with jitter
+     *
+     * @param failures consecutive failures so far, at least 1
+     */
+    long backoff(int failures) {
+        long backoff = initialBackoff << Math.min(failures - 1, 30);
+        if (backoff <= 0 || backoff > maxBackoff) {
+            backoff = maxBackoff;
+        }
+        long spread = (long) (backoff * jitter);
+        if (spread == 0) {
+            return backoff;
+        }
+        return backoff - spread + ThreadLocalRandom.current().nextLong(2 * spread + 1);
+    }
+}
@@ -0,0 +1,174 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Token manager that renews the tokens in background, before they expire, so callers of
+ * {@link #getAccessToken()} only block when there is no valid access token at all.
+ * <p>
+ * The tokens are renewed once a fraction ({@code refreshRatio}) of their lifetime has passed, spread by a random
+ * {@code jitter} so many token managers don't hit the provider at the same moment.
+ *
+ * @param <T>
+ *         token type
+ * @param <R>
+ *         refresh token type
+ */
+public class ScheduledTokenManager<T, R> implements AsyncTokenManager<T> {
+    private static final long MIN_REFRESH_DELAY = 1000; // 1 second
+
+    private static final long MIN_RETRY_DELAY = 1000; // 1 second
+
+    private static final long MAX_RETRY_DELAY = 60000; // 1 minute
+
+    private final TokenManagerImpl<T, R> tokenManager;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final boolean shutdownScheduler;
+
+    private final double refreshRatio;
+
+    private final double jitter;
+
+    private ScheduledFuture<?> nextRefresh;
+
+    private long retryDelay = MIN_RETRY_DELAY;
+
+    private boolean closed;
+
+    /**
+     * Create a new scheduled token manager and start fetching the tokens in background. If the token manager already
+     * has valid tokens, they are only renewed when due.
+     *
+     * @param tokenManager
+     *         token manager to keep renewed
+     * @param scheduler
+     *         scheduler to run the background refreshes
+     * @param shutdownScheduler
+     *         if the scheduler should be shutdown when this token manager is closed
+     * @param refreshRatio
+     *         fraction of the tokens lifetime after which they are renewed, between 0 and 1
+     * @param jitter
+     *         fraction of the refresh delay to randomly add or subtract, between 0 and 1
+     */
+    public ScheduledTokenManager(TokenManagerImpl<T, R> tokenManager, ScheduledExecutorService scheduler,
+            boolean shutdownScheduler, double refreshRatio, double jitter) {
+        if (refreshRatio <= 0 || refreshRatio > 1) {
+            throw new IllegalArgumentException("refresh ratio must be between 0 and 1");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.tokenManager = tokenManager;
+        this.scheduler = scheduler;
+        this.shutdownScheduler = shutdownScheduler;
+        this.refreshRatio = refreshRatio;
+        this.jitter = jitter;
+
+        TokenManagerImpl.State<T, R> current = tokenManager.currentState();
+        if (current == null) {
+            schedule(0);
+        } else {
+            long delay = nextRefreshDelay(current);
+            if (delay >= 0) {
+                schedule(delay);
+            }
+        }
+    }
+
+    @Override
+    public T getAccessToken() {
+        return tokenManager.getAccessToken();
+    }
+
+    @Override
+    public CompletableFuture<T> getAccessTokenAsync() {
+        return tokenManager.getAccessTokenAsync();
+    }
+
+    @Override
+    public void invalidate(T accessToken) {
+        tokenManager.invalidate(accessToken);
+    }
+
+    /**
+     * Subscribe to the new tokens, as {@link TokenManagerImpl#onTokenChanged(Consumer, Executor)}. With background
+     * refresh, the listener gets the new tokens well before the old ones expire.
+     *
+     * @param listener
+     *         listener of the new tokens
+     * @param executor
+     *         executor to run the listener
+     * @return the subscription, to close when no longer interested
+     */
+    public TokenManagerImpl.Subscription<T, R> onTokenChanged(Consumer<Tokens<T, R>> listener, Executor executor) {
+        return tokenManager.onTokenChanged(listener, executor);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        if (shutdownScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void refresh() {
+        long delay;
+        try {
+            TokenManagerImpl.State<T, R> state = tokenManager.refresh();
+            retryDelay = MIN_RETRY_DELAY;
+            delay = nextRefreshDelay(state);
+            if (delay < 0) {
+                // never expires, nothing else to do
+                return;
+            }
+        } catch (RuntimeException e) {
+            // provider failed, callers will retry on their own if the token expires meanwhile
+            delay = jitter(retryDelay);
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+        }
+        schedule(Math.max(delay, 0));
+    }
+
+    /**
+     * @return milliseconds until the tokens should be renewed, or -1 if they never expire
+     */
+    private long nextRefreshDelay(TokenManagerImpl.State<T, R> state) {
+        if (!state.expires) {
+            return -1;
+        }
+        long lifetime = state.expiresAt - state.fetchedAt;
+        long refreshAt = state.fetchedAt + jitter((long) (lifetime * refreshRatio));
+        if (state.validity - state.fetchedAt > 0 && refreshAt - state.validity > 0) {
+            refreshAt = state.validity;
+        }
+        long delay = TimeUnit.NANOSECONDS.toMillis(refreshAt - tokenManager.getClock().nanoTime());
+        // never hammer the provider, even with tokens that are short lived or already inside the threshold
+        return Math.max(delay, MIN_REFRESH_DELAY);
+    }
+
+    private long jitter(long delay) {
+        if (jitter == 0) {
+            return delay;
+        }
+        long spread = (long) (delay * jitter);
+        return delay - spread + (long) (ThreadLocalRandom.current().nextDouble() * 2 * spread);
+    }
+
+    private synchronized void schedule(long delay) {
+        if (!closed) {
+            nextRefresh = scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
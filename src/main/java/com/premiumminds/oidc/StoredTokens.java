@@ -0,0 +1,75 @@
+package com.premiumminds.oidc;
+
+/**
+ * Tokens as kept in a {@link TokenStore}, with absolute times so they stay meaningful for every node that reads them.
+ *
+ * @param <T>
+ *         token type
+ * @param <R>
+ *         refresh token type
+ */
+public final class StoredTokens<T, R> {
+    private final T accessToken;
+
+    private final R refreshToken;
+
+    private final long fetchedAt;
+
+    private final long expiresAt;
+
+    /**
+     * Create new stored tokens
+     *
+     * @param accessToken
+     *         access token
+     * @param refreshToken
+     *         refresh token, or null
+     * @param fetchedAt
+     *         when the tokens were fetched, in milliseconds since the epoch
+     * @param expiresAt
+     *         when the access token expires, in milliseconds since the epoch. {@link Long#MAX_VALUE} if it never
+     *         expires.
+     */
+    public StoredTokens(T accessToken, R refreshToken, long fetchedAt, long expiresAt) {
+        this.accessToken = accessToken;
+        this.refreshToken = refreshToken;
+        this.fetchedAt = fetchedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Get access token
+     *
+     * @return access token
+     */
+    public T getAccessToken() {
+        return accessToken;
+    }
+
+    /**
+     * Get refresh token
+     *
+     * @return refresh token, or null
+     */
+    public R getRefreshToken() {
+        return refreshToken;
+    }
+
+    /**
+     * Get when the tokens were fetched
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * Get when the access token expires
+     *
+     * @return milliseconds since the epoch. {@link Long#MAX_VALUE} if it never expires.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,39 @@
+package com.premiumminds.oidc;
+
+/**
+ * Source of time of a token manager.
+ * <p>
+ * Token expiration is tracked with the monotonic {@link #nanoTime()}, so it's not affected by wall clock adjustments.
+ * The wall clock is only used for times shared outside the JVM, like in a {@link TokenStore}.
+ */
+public interface TokenClock {
+
+    /**
+     * The system clock
+     */
+    TokenClock SYSTEM = new TokenClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Get the monotonic time, as {@link System#nanoTime()}. Only the difference between two values is meaningful.
+     *
+     * @return monotonic time in nanoseconds
+     */
+    long nanoTime();
+
+    /**
+     * Get the wall clock time, as {@link System#currentTimeMillis()}
+     *
+     * @return milliseconds since the epoch
+     */
+    long currentTimeMillis();
+}
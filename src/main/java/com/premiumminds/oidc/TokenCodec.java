@@ -0,0 +1,28 @@
+package com.premiumminds.oidc;
+
+/**
+ * Converts tokens to and from text, to keep them outside the JVM
+ *
+ * @param <T>
+ *         token type
+ */
+public interface TokenCodec<T> {
+
+    /**
+     * Convert the token to text
+     *
+     * @param token
+     *         token
+     * @return the token as text
+     */
+    String encode(T token);
+
+    /**
+     * Convert text back to the token
+     *
+     * @param value
+     *         the token as text
+     * @return token
+     */
+    T decode(String value);
+}
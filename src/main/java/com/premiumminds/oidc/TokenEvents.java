@@ -0,0 +1,101 @@
+package com.premiumminds.oidc;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * Profiler events of the token operations: requests for new tokens, requests to the token endpoint, fallbacks from the
+ * refresh token to the grant, and callers waiting for new tokens.
+ * <p>
+ * On Java 11 or later, with the JDK Flight Recorder, they are recorded as JFR events in the
+ * {@code OIDC Token Manager} category, once enabled in the recording settings. Otherwise, and while they are not
+ * enabled, recording an event does nothing and allocates nothing.
+ */
+public interface TokenEvents {
+    /**
+     * Events that record nothing, used when the JDK Flight Recorder is not available
+     */
+    TokenEvents NOOP = new TokenEvents() {
+    };
+
+    /**
+     * Get the events of this JVM: JDK Flight Recorder events if available, otherwise {@link #NOOP}
+     *
+     * @return the events
+     */
+    static TokenEvents get() {
+        return TokenEventsLoader.INSTANCE;
+    }
+
+    /**
+     * A request for new tokens starts, with the authorization grant or the refresh token
+     *
+     * @param refresh
+     *         if the request uses the refresh token
+     * @return the event, to end when the request finishes
+     */
+    default Span tokenRequest(boolean refresh) {
+        return Span.NOOP;
+    }
+
+    /**
+     * A request to the token endpoint starts
+     *
+     * @param endpoint
+     *         token endpoint
+     * @param grantType
+     *         grant type of the request
+     * @return the event, to end when the response arrives
+     */
+    default Span endpointRequest(URI endpoint, String grantType) {
+        return Span.NOOP;
+    }
+
+    /**
+     * A caller starts waiting for new tokens
+     *
+     * @return the event, to end when the caller stops waiting
+     */
+    default Span callerWait() {
+        return Span.NOOP;
+    }
+
+    /**
+     * The refresh token request failed, new tokens are being requested with the authorization grant instead
+     *
+     * @param cause
+     *         refresh failure
+     */
+    default void refreshFallback(Throwable cause) {
+    }
+
+    /**
+     * Get the outcome of an operation as recorded in the events
+     *
+     * @param failure
+     *         failure of the operation, or null if it succeeded
+     * @return {@code success}, or the {@link ProviderErrorKind} of the failure in lower case
+     */
+    static String outcome(Throwable failure) {
+        return failure == null ? "success" : ProviderErrorKind.of(failure).name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Event of an operation that takes time
+     */
+    interface Span {
+        /**
+         * Span that records nothing
+         */
+        Span NOOP = failure -> {
+        };
+
+        /**
+         * The operation finished. Record the event, with the time since it started.
+         *
+         * @param failure
+         *         failure of the operation, or null if it succeeded
+         */
+        void end(Throwable failure);
+    }
+}
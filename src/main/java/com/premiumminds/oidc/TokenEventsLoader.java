@@ -0,0 +1,22 @@
+package com.premiumminds.oidc;
+
+/**
+ * Loads the JDK Flight Recorder events, compiled for Java 11, only if the JVM has the Flight Recorder
+ */
+final class TokenEventsLoader {
+    static final TokenEvents INSTANCE = load();
+
+    private TokenEventsLoader() {
+    }
+
+    private static TokenEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event", false, TokenEventsLoader.class.getClassLoader());
+            return (TokenEvents) Class.forName("com.premiumminds.oidc.jfr.FlightRecorderTokenEvents")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+            // Java 8 without the Flight Recorder, or a JVM built without it
+            return TokenEvents.NOOP;
+        }
+    }
+}
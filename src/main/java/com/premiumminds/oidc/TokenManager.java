@@ -13,7 +13,7 @@ package com.premiumminds.oidc;
  * @param <T>
  *         token type
  */
-public interface TokenManager<T> {
+public interface TokenManager<T> extends AutoCloseable {
     /**
      * Retrieve access token. If no access token in cache or expired access token, it will try to retrieve it.
      * <p>
@@ -22,4 +22,25 @@ public interface TokenManager<T> {
      * @return access token
      */
     T getAccessToken();
+
+    /**
+     * Discard the access token because it was rejected, for example by a resource server answering 401, so the next
+     * call to {@link #getAccessToken()} fetches a new one.
+     * <p>
+     * Nothing happens if the access token was already replaced, so many callers rejected with the same access token
+     * cause a single renewal. The default implementation does nothing.
+     *
+     * @param accessToken
+     *         the rejected access token, as returned by {@link #getAccessToken()}
+     */
+    default void invalidate(T accessToken) {
+    }
+
+    /**
+     * Release any resources held by this token manager, like background refresh tasks. The default implementation
+     * does nothing.
+     */
+    @Override
+    default void close() {
+    }
 }
@@ -1,66 +1,1046 @@
 package com.premiumminds.oidc;
 
-public class TokenManagerImpl<T, R> implements TokenManager<T> {
-    private Tokens<T, R> tokens;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
 
-    private long validity;
+public class TokenManagerImpl<T, R> implements AsyncTokenManager<T> {
+    private static final long STORE_POLL_INTERVAL = 50; // 50 milliseconds
 
-    private int expireThreshold;
+    private static final long DEFAULT_STORE_WAIT = TimeUnit.SECONDS.toNanos(30); // without a deadline
 
-    private OpenIDProvider<T, R> provider;
+    private static final long DEFAULT_MIN_FORCED_REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long RETRY_BACKOFF = TimeUnit.MILLISECONDS.toNanos(100); // doubled on each retry
+
+    private static final int MAX_RETRY_BACKOFF_SHIFT = 5; // 3.2 seconds
+
+    private static final long MAX_EXPIRES_IN = TimeUnit.DAYS.toNanos(365 * 100); // 100 years
+
+    private static final TokenEvents EVENTS = TokenEvents.get();
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TokenManagerImpl, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(TokenManagerImpl.class, State.class, "state");
+
+    private volatile State<T, R> state;
+
+    private final AtomicReference<Fetch<T, R>> inflight = new AtomicReference<>();
+
+    private final CopyOnWriteArrayList<Subscription<T, R>> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final int expireThreshold;
+
+    private final OpenIDProvider<T, R> provider;
+
+    private final AsyncOpenIDProvider<T, R> asyncProvider;
+
+    private final Executor executor;
+
+    private TokenMetrics metrics = TokenMetrics.NOOP;
+
+    private CircuitBreaker breaker;
+
+    private TokenStore<T, R> store;
+
+    private TokenClock clock = TokenClock.SYSTEM;
+
+    private long minForcedRefreshInterval = DEFAULT_MIN_FORCED_REFRESH_INTERVAL;
+
+    private FallbackPolicy fallbackPolicy = FallbackPolicy.retrying(1);
+
+    private long deadline; // nanoseconds, 0 for none
+
+    private TokenRequestLimiter limiter;
+
+    private AdaptiveExpireThreshold adaptiveThreshold;
+
+    private volatile boolean forcedRefresh;
+
+    private volatile long lastForcedRefresh;
 
     /**
-     * Create new TokenManager with OpenID provider and a expire threshold for access token expiration
+     * Create new TokenManager with OpenID provider and a expire threshold for access token expiration.
+     * <p>
+     * If the provider is not an {@link AsyncOpenIDProvider}, the asynchronous requests run in the
+     * {@link DefaultExecutor}: the common fork join pool, or virtual threads on Java 21 or later.
      *
      * @param provider OpenID provider
      * @param expireThreshold number of milliseconds of the threshold before access token expires
      */
     public TokenManagerImpl(OpenIDProvider<T, R> provider, int expireThreshold) {
+        this(provider, expireThreshold, DefaultExecutor.get());
+    }
+
+    /**
+     * Create new TokenManager with OpenID provider and a expire threshold for access token expiration.
+     *
+     * @param provider OpenID provider
+     * @param expireThreshold number of milliseconds of the threshold before access token expires
+     * @param executor executor to run the asynchronous requests, if the provider is not an
+     *         {@link AsyncOpenIDProvider}
+     */
+    public TokenManagerImpl(OpenIDProvider<T, R> provider, int expireThreshold, Executor executor) {
         this.expireThreshold = expireThreshold;
         this.provider = provider;
-        this.validity = -1;
+        this.asyncProvider = AsyncOpenIDProvider.of(provider, executor);
+        this.executor = executor;
+    }
+
+    /**
+     * Set the listener of the token lifecycle. This should be called before the token manager is used.
+     * <p>
+     * Default: {@link TokenMetrics#NOOP}
+     *
+     * @param metrics metrics listener
+     * @return this token manager
+     */
+    public TokenManagerImpl<T, R> metrics(TokenMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Set how to behave when the provider is slow or failing. This should be called before the token manager is used.
+     * <p>
+     * With a resilience policy, callers are never blocked while the access token has not really expired: once it
+     * passes the expire threshold, new tokens are fetched in background, and retried as the policy says.
+     * <p>
+     * Default: none, the caller that finds the access token expired waits for the new tokens
+     *
+     * @param policy resilience policy, or null for none
+     * @return this token manager
+     */
+    public TokenManagerImpl<T, R> resilience(ResiliencePolicy policy) {
+        this.breaker = policy != null ? new CircuitBreaker(policy) : null;
+        return this;
+    }
+
+    /**
+     * Set the source of time. This should be called before the token manager is used.
+     * <p>
+     * Default: {@link TokenClock#SYSTEM}
+     *
+     * @param clock clock
+     * @return this token manager
+     * @see CoarseTokenClock
+     */
+    public TokenManagerImpl<T, R> clock(TokenClock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Set the minimum time between refreshes forced by {@link #invalidate(Object)}, to protect the provider from
+     * resource servers that keep rejecting new tokens. Access tokens rejected sooner are kept until they expire or
+     * the interval passes. This should be called before the token manager is used.
+     * <p>
+     * Default: 1 second
+     *
+     * @param interval minimum interval, 0 for none
+     * @param unit time unit of the interval
+     * @return this token manager
+     */
+    public TokenManagerImpl<T, R> minForcedRefreshInterval(long interval, TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("minimum forced refresh interval must not be negative");
+        }
+        this.minForcedRefreshInterval = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Set what to do when a request to the provider fails. This should be called before the token manager is used.
+     * <p>
+     * Default: {@link FallbackPolicy#retrying(int)} with 1 retry
+     *
+     * @param policy fallback policy
+     * @return this token manager
+     */
+    public TokenManagerImpl<T, R> fallbackPolicy(FallbackPolicy policy) {
+        this.fallbackPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Set the maximum time spent fetching new tokens, across the retries and the fallback to the grant: once it
+     * passes, no new request is sent to the provider and the fetch fails with the last failure. A request already
+     * sent is bounded by the provider timeouts only. This should be called before the token manager is used.
+     * <p>
+     * Default: none
+     *
+     * @param deadline maximum time, 0 for none
+     * @param unit time unit of the deadline
+     * @return this token manager
+     */
+    public TokenManagerImpl<T, R> deadline(long deadline, TimeUnit unit) {
+        if (deadline < 0) {
+            throw new IllegalArgumentException("deadline must not be negative");
+        }
+        this.deadline = unit.toNanos(deadline);
+        return this;
+    }
+
+    /**
+     * Renew the tokens ahead of their expiration by a threshold that follows how long the requests for new tokens
+     * take, instead of the fixed one of the constructor. This should be called before the token manager is used.
+     * <p>
+     * Default: none, the fixed threshold
+     *
+     * @param threshold adaptive threshold, or null for the fixed one
+     * @return this token manager
+     */
+    public TokenManagerImpl<T, R> expireThreshold(AdaptiveExpireThreshold threshold) {
+        this.adaptiveThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Get the expire threshold used for the next tokens, for monitoring
+     *
+     * @return threshold in milliseconds
+     */
+    public long getExpireThreshold() {
+        return adaptiveThreshold != null ? adaptiveThreshold.getThreshold() : expireThreshold;
+    }
+
+    /**
+     * Limit the requests to the provider with a limiter shared with other token managers of the same token endpoint.
+     * Requests over the limit wait, ahead of the ones of token managers whose tokens expire later. This should be
+     * called before the token manager is used.
+     * <p>
+     * Default: none
+     *
+     * @param limiter request limiter, or null for none
+     * @return this token manager
+     * @see TokenRequestLimiter#shared(java.net.URI, double, int)
+     */
+    public TokenManagerImpl<T, R> rateLimiter(TokenRequestLimiter limiter) {
+        this.limiter = limiter;
+        return this;
+    }
+
+    /**
+     * Share the tokens with other token managers through a store, so only one of them fetches new tokens from the
+     * provider. This should be called before the token manager is used.
+     * <p>
+     * With a store, the asynchronous requests always run in the executor, since waiting for the store lease blocks.
+     * A token manager waits for the lease at most until the {@link #deadline(long, TimeUnit) deadline}, or 30 seconds
+     * without one, and then fetches the tokens from the provider itself without saving them, so a lease holder that
+     * hangs doesn't block the others forever.
+     * <p>
+     * Default: none
+     *
+     * @param store token store, or null for none
+     * @return this token manager
+     */
+    public TokenManagerImpl<T, R> tokenStore(TokenStore<T, R> store) {
+        this.store = store;
+        return this;
+    }
+
+    /**
+     * Load the stored tokens, if they are still valid, so the first caller needs no request to the provider. A store
+     * that can't be read is ignored, and the tokens are fetched from the provider as usual. This should be called
+     * before the token manager is used.
+     *
+     * @return this token manager
+     */
+    public TokenManagerImpl<T, R> loadStoredTokens() {
+        if (store != null && state == null) {
+            try {
+                State<T, R> stored = loadShared(null);
+                if (stored != null) {
+                    state = stored;
+                    publish(stored);
+                }
+            } catch (RuntimeException e) {
+                metrics.error(e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Subscribe to the new tokens, for consumers that hold on to the access token for a long time, like the
+     * credentials of a channel or a session, so they can swap them as soon as they are renewed instead of polling
+     * {@link #getAccessToken()}. Tokens fetched before subscribing are not delivered.
+     * <p>
+     * Each new tokens are delivered once, in the order they were fetched, one at a time, in the executor. A listener
+     * that throws doesn't stop the next tokens from being delivered.
+     *
+     * @param listener listener of the new tokens
+     * @param executor executor to run the listener
+     * @return the subscription, to close when no longer interested
+     */
+    public Subscription<T, R> onTokenChanged(Consumer<Tokens<T, R>> listener, Executor executor) {
+        Subscription<T, R> subscription = new Subscription<>(this, listener, executor);
+        subscriptions.add(subscription);
+        return subscription;
     }
 
     @Override
     public T getAccessToken() {
-        if (tokens == null || expired()) {
-            fetchNewToken();
+        State<T, R> current = state;
+        long now = clock.nanoTime();
+        if (current == null || current.expired(now)) {
+            if (breaker != null && current != null && !current.reallyExpired(now)) {
+                // serve the current token while new ones are fetched in background
+                revalidate(current, now);
+                metrics.cacheHit();
+                return current.tokens.getAccessToken();
+            }
+            long start = System.nanoTime();
+            TokenEvents.Span wait = EVENTS.callerWait();
+            Throwable failure = null;
+            try {
+                current = fetchNewToken(current, true);
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                metrics.callerWait(System.nanoTime() - start);
+                wait.end(failure);
+            }
+        } else {
+            metrics.cacheHit();
+        }
+        return current.tokens.getAccessToken();
+    }
+
+    @Override
+    public CompletableFuture<T> getAccessTokenAsync() {
+        State<T, R> current = state;
+        long now = clock.nanoTime();
+        if (current != null && !current.expired(now)) {
+            metrics.cacheHit();
+            return current.accessToken;
+        }
+        if (breaker != null && current != null && !current.reallyExpired(now)) {
+            // serve the current token while new ones are fetched in background
+            revalidate(current, now);
+            metrics.cacheHit();
+            return current.accessToken;
+        }
+        try {
+            return fetchNewTokenAsync(current);
+        } catch (TokenUnavailableException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    @Override
+    public void invalidate(T accessToken) {
+        State<T, R> current = state;
+        long now = clock.nanoTime();
+        if (current == null || current.tokens.getAccessToken() != accessToken || current.reallyExpired(now)) {
+            // already replaced, or already invalidated by a concurrent caller
+            return;
+        }
+        if (forcedRefresh && now - lastForcedRefresh < minForcedRefreshInterval) {
+            return;
+        }
+        if (STATE.compareAndSet(this, current, current.invalidated(now))) {
+            lastForcedRefresh = now;
+            forcedRefresh = true;
+        }
+    }
+
+    /**
+     * Fetch new tokens from the provider, making sure only one caller talks to the provider at a time. Callers that
+     * arrive while a fetch is in flight either keep using the current token, if it has not really expired yet, or
+     * wait for the in flight fetch to finish.
+     */
+    private State<T, R> fetchNewToken(State<T, R> observed, boolean useValidToken) {
+        while (true) {
+            Fetch<T, R> pending = inflight.get();
+            if (pending != null) {
+                if (useValidToken && observed != null && !observed.reallyExpired(clock.nanoTime())) {
+                    return observed;
+                }
+                return await(pending.state);
+            }
+            checkCircuit();
+
+            Fetch<T, R> mine = new Fetch<>();
+            if (!inflight.compareAndSet(null, mine)) {
+                continue;
+            }
+
+            State<T, R> current = state;
+            if (current != observed && current != null && !current.expired(clock.nanoTime())) {
+                // someone else already fetched new tokens since we looked
+                complete(mine, current, null);
+                return current;
+            }
+
+            try {
+                State<T, R> fetched = store != null ? fetchShared(current) : fetchFromProvider(current);
+                complete(mine, fetched, null);
+                return fetched;
+            } catch (RuntimeException | Error e) {
+                complete(mine, null, e);
+                throw e;
+            }
         }
-        return tokens.getAccessToken();
     }
 
-    private synchronized void fetchNewToken() {
-        if (tokens != null && tokens.getRefreshToken() != null) {
-            refreshToken();
+    /**
+     * Same as {@link #fetchNewToken(State, boolean)}, but the caller never waits for the provider.
+     */
+    private CompletableFuture<T> fetchNewTokenAsync(State<T, R> observed) {
+        while (true) {
+            Fetch<T, R> pending = inflight.get();
+            if (pending != null) {
+                if (observed != null && !observed.reallyExpired(clock.nanoTime())) {
+                    return observed.accessToken;
+                }
+                return pending.accessToken;
+            }
+            checkCircuit();
+
+            Fetch<T, R> mine = new Fetch<>();
+            if (!inflight.compareAndSet(null, mine)) {
+                continue;
+            }
+
+            State<T, R> current = state;
+            if (current != observed && current != null && !current.expired(clock.nanoTime())) {
+                // someone else already fetched new tokens since we looked
+                complete(mine, current, null);
+                return current.accessToken;
+            }
+
+            CompletableFuture<State<T, R>> fetched;
+            try {
+                if (store != null) {
+                    fetched = CompletableFuture.supplyAsync(() -> fetchShared(current), executor);
+                } else {
+                    fetched = fetchFromProviderAsync(current);
+                }
+            } catch (RuntimeException | Error e) {
+                complete(mine, null, e);
+                throw e;
+            }
+            fetched.whenComplete((fetchedState, e) -> complete(mine, fetchedState, e));
+            return mine.accessToken;
+        }
+    }
+
+    /**
+     * Publish the outcome of a fetch. The new state becomes visible before the fetch stops being in flight, so
+     * nobody starts another fetch in between.
+     */
+    private void complete(Fetch<T, R> fetch, State<T, R> fetched, Throwable failure) {
+        if (failure == null) {
+            State<T, R> previous = state;
+            state = fetched;
+            if (fetched != previous) {
+                publish(fetched);
+            }
+            if (breaker != null) {
+                breaker.onSuccess();
+            }
         } else {
-            grantToken();
+            metrics.error(unwrap(failure));
+            if (breaker != null) {
+                long now = clock.nanoTime();
+                scheduleRetry(breaker.onFailure(unwrap(failure), now), now);
+            }
+        }
+        inflight.compareAndSet(fetch, null);
+        if (failure == null) {
+            fetch.state.complete(fetched);
+        } else {
+            fetch.state.completeExceptionally(unwrap(failure));
+        }
+    }
+
+    /**
+     * Hand new tokens to the subscribers. Called with the new state already visible and before anyone can start
+     * another fetch, so the tokens are published in the order they were fetched.
+     */
+    private void publish(State<T, R> fetched) {
+        for (Subscription<T, R> subscription : subscriptions) {
+            subscription.publish(fetched.tokens);
+        }
+    }
+
+    /**
+     * Fail fast, without calling the provider, while the circuit is open
+     */
+    private void checkCircuit() {
+        if (breaker != null && breaker.isOpen(clock.nanoTime())) {
+            throw new TokenUnavailableException("OpenID provider is failing, not calling it until the circuit closes",
+                    breaker.getLastFailure());
+        }
+    }
+
+    /**
+     * Start fetching new tokens in background, unless a fetch is already in flight or the policy says to wait
+     */
+    private void revalidate(State<T, R> current, long now) {
+        if (inflight.get() == null && breaker.allowBackgroundAttempt(now)) {
+            fetchInBackground(current);
+        }
+    }
+
+    private void fetchInBackground(State<T, R> current) {
+        try {
+            fetchNewTokenAsync(current);
+        } catch (RuntimeException | Error e) {
+            // already handled by complete, which schedules the retry
+        }
+    }
+
+    /**
+     * Schedule the retry of a failed fetch, while there is a token worth renewing before it really expires. Callers
+     * without a valid token don't need it: they fetch on their own.
+     */
+    private void scheduleRetry(long backoff, long now) {
+        State<T, R> current = state;
+        if (current == null || current.reallyExpired(now) || !breaker.claimRetry()) {
+            return;
+        }
+        long delay = Math.max(backoff, breaker.remainingOpen(now));
+        try {
+            breaker.getPolicy().getScheduler().schedule(this::retry, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // scheduler is shutdown, callers will retry on their own
+            breaker.releaseRetry();
         }
     }
 
+    private void retry() {
+        breaker.releaseRetry();
+        State<T, R> current = state;
+        long now = clock.nanoTime();
+        if (current != null && current.expired(now) && !current.reallyExpired(now) && inflight.get() == null) {
+            fetchInBackground(current);
+        }
+    }
+
+    private static <S> S await(CompletableFuture<S> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            return e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Fetch new tokens even if the current ones have not expired yet. If another fetch is in flight, or the tokens
+     * were renewed since the caller last looked, no extra provider request is made.
+     *
+     * @return the current tokens snapshot
+     */
+    State<T, R> refresh() {
+        return fetchNewToken(state, false);
+    }
+
+    /**
+     * @return the current tokens snapshot, or null if there are no tokens yet
+     */
+    State<T, R> currentState() {
+        return state;
+    }
+
+    TokenClock getClock() {
+        return clock;
+    }
+
     public boolean expired() {
-        return validity < System.currentTimeMillis();
+        State<T, R> current = state;
+        return current == null || current.expired(clock.nanoTime());
+    }
+
+    /**
+     * Fetch new tokens with the refresh token, if there is one, otherwise with the grant. Failed requests are retried
+     * or fall back to the grant as the fallback policy says, until the deadline.
+     */
+    private State<T, R> fetchFromProvider(State<T, R> current) {
+        return fetchFromProvider(current, clock.nanoTime() + deadline);
+    }
+
+    private State<T, R> fetchFromProvider(State<T, R> current, long deadlineAt) {
+        boolean refresh = current != null && current.tokens.getRefreshToken() != null;
+        int failures = 0;
+        while (true) {
+            try {
+                acquirePermit(current);
+                return refresh ? refreshToken(current.tokens) : grantToken();
+            } catch (RuntimeException e) {
+                failures++;
+                FallbackPolicy.Action action = afterFailure(refresh, e, failures, deadlineAt);
+                if (action == FallbackPolicy.Action.FAIL) {
+                    throw e;
+                }
+                if (sameRequest(refresh, action)) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(retryBackoff(failures));
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("interrupted waiting to retry the token request", interrupted);
+                    }
+                }
+                refresh = refresh && action == FallbackPolicy.Action.RETRY;
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #fetchFromProvider(State)}, but the caller never waits for the provider.
+     */
+    private CompletableFuture<State<T, R>> fetchFromProviderAsync(State<T, R> current) {
+        long deadlineAt = clock.nanoTime() + deadline;
+        boolean refresh = current != null && current.tokens.getRefreshToken() != null;
+        return attemptAsync(current, refresh, 0, deadlineAt);
     }
 
-    private void refreshToken() {
+    private CompletableFuture<State<T, R>> attemptAsync(State<T, R> current, boolean refresh, int failures,
+            long deadlineAt) {
+        CompletableFuture<Void> permit = acquirePermitAsync(current);
+        CompletableFuture<State<T, R>> attempt;
+        if (permit.isDone()) {
+            attempt = attempt(current, refresh);
+        } else {
+            // the permit is granted in the limiter scheduler, not the place to talk to the provider
+            attempt = permit.thenComposeAsync(granted -> attempt(current, refresh), executor);
+        }
+        return attempt.handle((fetched, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(fetched);
+            }
+            Throwable failure = unwrap(e);
+            FallbackPolicy.Action action = afterFailure(refresh, failure, failures + 1, deadlineAt);
+            if (action == FallbackPolicy.Action.FAIL) {
+                CompletableFuture<State<T, R>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(failure);
+                return failed;
+            }
+            boolean retryRefresh = refresh && action == FallbackPolicy.Action.RETRY;
+            if (!sameRequest(refresh, action)) {
+                return attemptAsync(current, retryRefresh, failures + 1, deadlineAt);
+            }
+            CompletableFuture<Void> backoff = new CompletableFuture<>();
+            try {
+                SharedScheduler.INSTANCE.schedule(() -> backoff.complete(null), retryBackoff(failures + 1),
+                        TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException rejected) {
+                backoff.complete(null);
+            }
+            // resumed in the shared scheduler, not the place to talk to the provider
+            return backoff.thenComposeAsync(
+                    resumed -> attemptAsync(current, retryRefresh, failures + 1, deadlineAt), executor);
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * @return if the action sends the same request that failed again, rather than falling back to the grant
+     */
+    private static boolean sameRequest(boolean refresh, FallbackPolicy.Action action) {
+        return !refresh || action == FallbackPolicy.Action.RETRY;
+    }
+
+    /**
+     * @return nanoseconds to wait before sending a failed request again, doubled on each failure
+     */
+    private static long retryBackoff(int failures) {
+        return RETRY_BACKOFF << Math.min(failures - 1, MAX_RETRY_BACKOFF_SHIFT);
+    }
+
+    private CompletableFuture<State<T, R>> attempt(State<T, R> current, boolean refresh) {
         try {
-            tokens = provider.refreshToken(tokens.getRefreshToken());
-            calculateValidity();
-        } catch (Exception e) {
-            // something went wrong, let's try the grant method
-            grantToken();
+            return refresh ? refreshTokenAsync(current.tokens) : grantTokenAsync();
+        } catch (RuntimeException e) {
+            CompletableFuture<State<T, R>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
         }
     }
 
-    private void grantToken() {
-        tokens = provider.grantToken();
-        calculateValidity();
+    /**
+     * Wait for the rate limiter, if there is one, to let a request to the provider through
+     */
+    private void acquirePermit(State<T, R> current) {
+        CompletableFuture<Void> permit = acquirePermitAsync(current);
+        if (!permit.isDone()) {
+            await(permit);
+        }
     }
 
-    private void calculateValidity() {
-        if (tokens.getExpiresIn() >= 0) {
-            this.validity = System.currentTimeMillis() + tokens.getExpiresIn() - expireThreshold;
+    /**
+     * Same as {@link #acquirePermit(State)}, but the caller never waits for the rate limiter
+     */
+    private CompletableFuture<Void> acquirePermitAsync(State<T, R> current) {
+        if (limiter == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Void> permit = limiter.acquireAsync(remaining(current), TimeUnit.NANOSECONDS);
+        if (!permit.isDone()) {
+            permit.thenRun(() -> metrics.rateLimited(System.nanoTime() - start));
+        }
+        return permit;
+    }
+
+    /**
+     * @return nanoseconds until the current access token really expires, 0 if there is none, so the token managers
+     *         with callers waiting go first
+     */
+    private long remaining(State<T, R> current) {
+        if (current == null) {
+            return 0;
+        }
+        if (!current.expires) {
+            return MAX_EXPIRES_IN;
+        }
+        return Math.max(current.expiresAt - clock.nanoTime(), 0);
+    }
+
+    /**
+     * @return what the fallback policy says to do after a failed request, or to fail if the deadline has passed or
+     *         would pass during the backoff
+     */
+    private FallbackPolicy.Action afterFailure(boolean refresh, Throwable failure, int failures, long deadlineAt) {
+        ProviderErrorKind kind = ProviderErrorKind.of(failure);
+        FallbackPolicy.Action action = refresh ? fallbackPolicy.onRefreshFailure(kind, failures)
+                : fallbackPolicy.onGrantFailure(kind, failures);
+        long resumeAt = clock.nanoTime() + (sameRequest(refresh, action) ? retryBackoff(failures) : 0);
+        if (action == FallbackPolicy.Action.FAIL || (deadline > 0 && resumeAt - deadlineAt >= 0)) {
+            return FallbackPolicy.Action.FAIL;
+        }
+        if (refresh && action == FallbackPolicy.Action.GRANT) {
+            metrics.refreshFallback(failure);
+            EVENTS.refreshFallback(failure);
         } else {
-            this.validity = Long.MAX_VALUE;
+            metrics.retry(failure);
+        }
+        return action;
+    }
+
+    /**
+     * Fetch new tokens through the store: use the stored tokens if they are newer than ours and still valid,
+     * otherwise fetch them from the provider while holding the store lease. Only one token manager sharing the store
+     * holds the lease, the others wait for it to save the new tokens or release the lease, until the deadline.
+     */
+    private State<T, R> fetchShared(State<T, R> current) {
+        long start = clock.nanoTime();
+        long deadlineAt = start + deadline;
+        long waitUntil = start + (deadline > 0 ? deadline : DEFAULT_STORE_WAIT);
+        while (true) {
+            State<T, R> shared = loadShared(current);
+            if (shared != null) {
+                return shared;
+            }
+
+            TokenStore.Lease lease = store.tryLease();
+            if (lease != null) {
+                try {
+                    // saved by someone else before we got the lease
+                    shared = loadShared(current);
+                    if (shared != null) {
+                        return shared;
+                    }
+                    State<T, R> fetched = fetchFromProvider(current, deadlineAt);
+                    store.save(toStored(fetched));
+                    return fetched;
+                } finally {
+                    lease.close();
+                }
+            }
+
+            if (clock.nanoTime() - waitUntil >= 0) {
+                // the lease holder is stuck, don't wait for it any longer, nor touch the store without the lease
+                return fetchFromProvider(current, deadlineAt);
+            }
+            try {
+                Thread.sleep(STORE_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted waiting for the token store lease", e);
+            }
         }
     }
+
+    /**
+     * @return the stored tokens if they are newer than the current ones and have not expired, otherwise null
+     */
+    private State<T, R> loadShared(State<T, R> current) {
+        StoredTokens<T, R> stored = store.load();
+        if (stored == null || (current != null && stored.getFetchedAt() <= current.fetchedAtMillis)) {
+            return null;
+        }
+        long now = clock.nanoTime();
+        long expiresIn = -1;
+        if (stored.getExpiresAt() != Long.MAX_VALUE) {
+            // relative to our wall clock, the only one the stored times can be compared with
+            expiresIn = stored.getExpiresAt() - clock.currentTimeMillis();
+            if (expiresIn <= 0) {
+                return null;
+            }
+        }
+        State<T, R> shared = newState(new Tokens<>(stored.getAccessToken(), stored.getRefreshToken(), expiresIn), now,
+                stored.getFetchedAt());
+        return shared.expired(now) ? null : shared;
+    }
+
+    private StoredTokens<T, R> toStored(State<T, R> fetched) {
+        long expiresAt = Long.MAX_VALUE;
+        if (fetched.expires) {
+            expiresAt = clock.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(fetched.expiresAt - clock.nanoTime());
+        }
+        return new StoredTokens<>(fetched.tokens.getAccessToken(), fetched.tokens.getRefreshToken(),
+                fetched.fetchedAtMillis, expiresAt);
+    }
+
+    private State<T, R> refreshToken(Tokens<T, R> tokens) {
+        metrics.refresh();
+        TokenEvents.Span event = EVENTS.tokenRequest(true);
+        long start = System.nanoTime();
+        try {
+            State<T, R> refreshed = calculateValidity(provider.refreshToken(tokens.getRefreshToken()));
+            event.end(null);
+            return refreshed;
+        } catch (RuntimeException | Error e) {
+            event.end(e);
+            throw e;
+        } finally {
+            recordDuration(start);
+        }
+    }
+
+    private State<T, R> grantToken() {
+        metrics.grant();
+        TokenEvents.Span event = EVENTS.tokenRequest(false);
+        long start = System.nanoTime();
+        try {
+            State<T, R> granted = calculateValidity(provider.grantToken());
+            event.end(null);
+            return granted;
+        } catch (RuntimeException | Error e) {
+            event.end(e);
+            throw e;
+        } finally {
+            recordDuration(start);
+        }
+    }
+
+    private CompletableFuture<State<T, R>> refreshTokenAsync(Tokens<T, R> tokens) {
+        metrics.refresh();
+        TokenEvents.Span event = EVENTS.tokenRequest(true);
+        long start = System.nanoTime();
+        return asyncProvider.refreshTokenAsync(tokens.getRefreshToken())
+                .whenComplete((refreshed, e) -> {
+                    recordDuration(start);
+                    event.end(unwrap(e));
+                })
+                .thenApply(this::calculateValidity);
+    }
+
+    private CompletableFuture<State<T, R>> grantTokenAsync() {
+        metrics.grant();
+        TokenEvents.Span event = EVENTS.tokenRequest(false);
+        long start = System.nanoTime();
+        return asyncProvider.grantTokenAsync()
+                .whenComplete((granted, e) -> {
+                    recordDuration(start);
+                    event.end(unwrap(e));
+                })
+                .thenApply(this::calculateValidity);
+    }
+
+    private void recordDuration(long start) {
+        if (adaptiveThreshold != null) {
+            adaptiveThreshold.record(System.nanoTime() - start);
+        }
+    }
+
+    private State<T, R> calculateValidity(Tokens<T, R> tokens) {
+        return newState(tokens, clock.nanoTime(), clock.currentTimeMillis());
+    }
+
+    private State<T, R> newState(Tokens<T, R> tokens, long now, long fetchedAtMillis) {
+        if (tokens.getExpiresIn() < 0) {
+            return new State<>(tokens, now, fetchedAtMillis, false, now, now);
+        }
+        // far enough from overflowing when compared with other nanoTime values
+        long expiresIn = Math.min(TimeUnit.MILLISECONDS.toNanos(tokens.getExpiresIn()), MAX_EXPIRES_IN);
+        long expiresAt = now + expiresIn;
+        long threshold = adaptiveThreshold != null ? adaptiveThreshold.getThreshold(tokens.getExpiresIn())
+                : expireThreshold;
+        long validity = expiresAt - TimeUnit.MILLISECONDS.toNanos(threshold);
+        return new State<>(tokens, now, fetchedAtMillis, true, validity, expiresAt);
+    }
+
+    /**
+     * Immutable snapshot of the current tokens and when they should be renewed. Times are {@link TokenClock#nanoTime()}
+     * values, compared by their difference since they can overflow.
+     */
+    static final class State<T, R> {
+        final Tokens<T, R> tokens;
+
+        final long fetchedAt;
+
+        /**
+         * Wall clock time of the fetch, to compare with the tokens in the store
+         */
+        final long fetchedAtMillis;
+
+        /**
+         * If the access token expires at all
+         */
+        final boolean expires;
+
+        final long validity;
+
+        final long expiresAt;
+
+        /**
+         * Already completed future handed to asynchronous callers while these tokens are valid
+         */
+        final CompletableFuture<T> accessToken;
+
+        private State(Tokens<T, R> tokens, long fetchedAt, long fetchedAtMillis, boolean expires, long validity,
+                long expiresAt) {
+            this.tokens = tokens;
+            this.fetchedAt = fetchedAt;
+            this.fetchedAtMillis = fetchedAtMillis;
+            this.expires = expires;
+            this.validity = validity;
+            this.expiresAt = expiresAt;
+            this.accessToken = CompletableFuture.completedFuture(tokens.getAccessToken());
+        }
+
+        /**
+         * @return copy of this state that has really expired, keeping the refresh token
+         */
+        private State<T, R> invalidated(long now) {
+            return new State<>(tokens, fetchedAt, fetchedAtMillis, true, now - 1, now - 1);
+        }
+
+        private boolean expired(long now) {
+            return expires && now - validity > 0;
+        }
+
+        private boolean reallyExpired(long now) {
+            return expires && now - expiresAt > 0;
+        }
+    }
+
+    /**
+     * Subscription to the new tokens of a token manager, delivering them to its listener one at a time, in order
+     *
+     * @param <T>
+     *         token type
+     * @param <R>
+     *         refresh token type
+     * @see #onTokenChanged(Consumer, Executor)
+     */
+    public static final class Subscription<T, R> implements AutoCloseable {
+        private final TokenManagerImpl<T, R> tokenManager;
+
+        private final Consumer<Tokens<T, R>> listener;
+
+        private final Executor executor;
+
+        private final ConcurrentLinkedQueue<Tokens<T, R>> pending = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean delivering = new AtomicBoolean();
+
+        private volatile boolean closed;
+
+        private Subscription(TokenManagerImpl<T, R> tokenManager, Consumer<Tokens<T, R>> listener,
+                Executor executor) {
+            this.tokenManager = tokenManager;
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        private void publish(Tokens<T, R> tokens) {
+            pending.add(tokens);
+            startDelivering();
+        }
+
+        private void startDelivering() {
+            if (!closed && delivering.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::deliver);
+                } catch (RejectedExecutionException e) {
+                    // executor is shutdown, nobody left to deliver to
+                    pending.clear();
+                    delivering.set(false);
+                }
+            }
+        }
+
+        private void deliver() {
+            Tokens<T, R> tokens;
+            while (!closed && (tokens = pending.poll()) != null) {
+                try {
+                    listener.accept(tokens);
+                } catch (RuntimeException e) {
+                    // the listener's problem, the next tokens are still delivered
+                }
+            }
+            delivering.set(false);
+            // tokens published after the queue looked empty, but before delivering was reset
+            if (!pending.isEmpty()) {
+                startDelivering();
+            }
+        }
+
+        /**
+         * Stop delivering tokens, including the ones not delivered yet
+         */
+        @Override
+        public void close() {
+            closed = true;
+            tokenManager.subscriptions.remove(this);
+            pending.clear();
+        }
+    }
+
+    /**
+     * Fetch in flight, shared by every caller that needs its result
+     */
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oidc-token-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Fetch<T, R> {
+        private final CompletableFuture<State<T, R>> state = new CompletableFuture<>();
+
+        private final CompletableFuture<T> accessToken = state.thenApply(fetched -> fetched.tokens.getAccessToken());
+    }
 }
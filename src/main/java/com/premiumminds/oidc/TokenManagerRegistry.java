@@ -0,0 +1,268 @@
+package com.premiumminds.oidc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Registry of token managers, one for each token identity (for example client, scope and resource), created on
+ * demand.
+ * <p>
+ * Token managers not used for longer than {@code expireAfterAccess} are evicted and closed by a periodic sweep in a
+ * scheduler shared by every registry, until the registry is closed. The registry holds at most {@code maximumSize}
+ * token managers: when it grows beyond that, the expired ones are evicted, then the least recently used ones. Token
+ * managers are
+ * created outside the registry locks, so a factory that blocks (for example on discovery) only delays the callers of
+ * its own key.
+ *
+ * @param <K>
+ *         key type
+ * @param <T>
+ *         token type
+ */
+public class TokenManagerRegistry<K, T> implements AutoCloseable {
+    /**
+     * Fraction of the maximum size evicted at once, so a full registry is not sorted on every new token manager
+     */
+    private static final double EVICTION_SLACK = 0.1;
+
+    private final ConcurrentHashMap<K, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    private final Function<K, ? extends AsyncTokenManager<T>> factory;
+
+    private final int maximumSize;
+
+    private final long expireAfterAccess;
+
+    private final Runnable onClose;
+
+    private final ScheduledFuture<?> sweep;
+
+    /**
+     * Create a new registry
+     *
+     * @param factory
+     *         creates the token manager for a key
+     * @param maximumSize
+     *         maximum number of token managers
+     * @param expireAfterAccess
+     *         time after which a token manager not used is evicted and closed
+     * @param unit
+     *         time unit of expireAfterAccess
+     */
+    public TokenManagerRegistry(Function<K, ? extends AsyncTokenManager<T>> factory, int maximumSize,
+            long expireAfterAccess, TimeUnit unit) {
+        this(factory, maximumSize, expireAfterAccess, unit, () -> {});
+    }
+
+    /**
+     * Create a new registry
+     *
+     * @param factory
+     *         creates the token manager for a key
+     * @param maximumSize
+     *         maximum number of token managers
+     * @param expireAfterAccess
+     *         time after which a token manager not used is evicted and closed
+     * @param unit
+     *         time unit of expireAfterAccess
+     * @param onClose
+     *         runs after closing every token manager, to release resources shared between them
+     */
+    public TokenManagerRegistry(Function<K, ? extends AsyncTokenManager<T>> factory, int maximumSize,
+            long expireAfterAccess, TimeUnit unit, Runnable onClose) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximum size must be positive");
+        }
+        this.factory = factory;
+        this.maximumSize = maximumSize;
+        this.expireAfterAccess = unit.toMillis(expireAfterAccess);
+        this.onClose = onClose;
+        // expired token managers are evicted at most half their expiration time late
+        long interval = Math.max(this.expireAfterAccess / 2, 1);
+        this.sweep = SharedScheduler.INSTANCE.scheduleWithFixedDelay(this::cleanUp, interval, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the token manager for the key, creating it if needed.
+     * <p>
+     * Keys are looked up on every call, so reuse the same key instances instead of creating new ones.
+     *
+     * @param key
+     *         token identity
+     * @return the token manager
+     */
+    public AsyncTokenManager<T> get(K key) {
+        long now = System.currentTimeMillis();
+        Entry<T> entry = entries.get(key);
+        if (entry == null) {
+            Entry<T> mine = new Entry<>(now);
+            entry = entries.putIfAbsent(key, mine);
+            if (entry == null) {
+                entry = mine;
+                create(key, mine);
+                if (entries.size() > maximumSize) {
+                    evict(now);
+                }
+            }
+        }
+        if (entry.lastAccess != now) {
+            // avoid writing to memory shared between threads more than once per millisecond
+            entry.lastAccess = now;
+        }
+        return entry.tokenManager();
+    }
+
+    /**
+     * Retrieve the access token for the key. This method can have blocking IO.
+     *
+     * @param key
+     *         token identity
+     * @return access token
+     */
+    public T getAccessToken(K key) {
+        return get(key).getAccessToken();
+    }
+
+    /**
+     * Retrieve the access token for the key without blocking the caller.
+     *
+     * @param key
+     *         token identity
+     * @return future completed with the access token
+     */
+    public CompletableFuture<T> getAccessTokenAsync(K key) {
+        return get(key).getAccessTokenAsync();
+    }
+
+    /**
+     * Evict the token managers not used for longer than {@code expireAfterAccess}. This also happens periodically,
+     * and when a new token manager makes the registry grow beyond its maximum size.
+     */
+    public void cleanUp() {
+        evict(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the number of token managers in the registry
+     *
+     * @return number of token managers
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Close every token manager in the registry, and stop evicting the expired ones
+     */
+    @Override
+    public void close() {
+        sweep.cancel(false);
+        for (Map.Entry<K, Entry<T>> entry : entries.entrySet()) {
+            remove(entry.getKey(), entry.getValue());
+        }
+        onClose.run();
+    }
+
+    private void create(K key, Entry<T> entry) {
+        try {
+            entry.tokenManager.complete(factory.apply(key));
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, entry);
+            entry.tokenManager.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void evict(long now) {
+        List<Candidate<K, T>> candidates = new ArrayList<>();
+        for (Map.Entry<K, Entry<T>> entry : entries.entrySet()) {
+            if (!entry.getValue().tokenManager.isDone()) {
+                // still being created
+                continue;
+            }
+            long lastAccess = entry.getValue().lastAccess;
+            if (now - lastAccess > expireAfterAccess) {
+                remove(entry.getKey(), entry.getValue());
+            } else {
+                candidates.add(new Candidate<>(entry.getKey(), entry.getValue(), lastAccess));
+            }
+        }
+
+        int excess = entries.size() - maximumSize;
+        if (excess > 0) {
+            excess += (int) (maximumSize * EVICTION_SLACK);
+            // least recently used first
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+            for (int i = 0; i < excess && i < candidates.size(); i++) {
+                remove(candidates.get(i).key, candidates.get(i).entry);
+            }
+        }
+    }
+
+    private void remove(K key, Entry<T> entry) {
+        if (entries.remove(key, entry)) {
+            entry.tokenManager.thenAccept(AsyncTokenManager::close);
+        }
+    }
+
+    private static final class Entry<T> {
+        /**
+         * Completed once the factory returns, by the caller that added the entry
+         */
+        private final CompletableFuture<AsyncTokenManager<T>> tokenManager = new CompletableFuture<>();
+
+        private volatile long lastAccess;
+
+        private Entry(long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+
+        private AsyncTokenManager<T> tokenManager() {
+            try {
+                return tokenManager.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oidc-token-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static final class Candidate<K, T> {
+        private final K key;
+
+        private final Entry<T> entry;
+
+        private final long lastAccess;
+
+        private Candidate(K key, Entry<T> entry, long lastAccess) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
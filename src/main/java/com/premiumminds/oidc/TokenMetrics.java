@@ -0,0 +1,102 @@
+package com.premiumminds.oidc;
+
+/**
+ * Listener of the token lifecycle, to collect metrics. Every method has an empty default implementation, so
+ * implementations only override what they need.
+ * <p>
+ * Methods are called on the thread doing the work, some of them on the path of every {@link TokenManager#getAccessToken()}
+ * call, so implementations must be thread safe and fast.
+ */
+public interface TokenMetrics {
+    /**
+     * Metrics that do nothing. This is the default.
+     */
+    TokenMetrics NOOP = new TokenMetrics() {
+    };
+
+    /**
+     * The access token was in cache and still valid
+     */
+    default void cacheHit() {
+    }
+
+    /**
+     * New tokens are being requested with the authorization grant
+     */
+    default void grant() {
+    }
+
+    /**
+     * New tokens are being requested with the refresh token
+     */
+    default void refresh() {
+    }
+
+    /**
+     * An access token is being requested with the token exchange grant, on behalf of a caller
+     */
+    default void exchange() {
+    }
+
+    /**
+     * The refresh token request failed, new tokens are being requested with the authorization grant instead
+     *
+     * @param cause
+     *         refresh failure
+     */
+    default void refreshFallback(Throwable cause) {
+    }
+
+    /**
+     * A request for new tokens failed and is being sent again, as the {@link FallbackPolicy} says
+     *
+     * @param cause
+     *         request failure
+     */
+    default void retry(Throwable cause) {
+    }
+
+    /**
+     * New tokens could not be fetched and the callers waiting for them got an error
+     *
+     * @param cause
+     *         failure
+     */
+    default void error(Throwable cause) {
+    }
+
+    /**
+     * A request to the OpenID provider finished, successfully or not
+     *
+     * @param durationNanos
+     *         request duration in nanoseconds
+     */
+    default void providerRequest(long durationNanos) {
+    }
+
+    /**
+     * A request was slow to be answered, and the same request was sent to another token endpoint
+     *
+     * @see HedgingOpenIDProvider
+     */
+    default void hedge() {
+    }
+
+    /**
+     * A request to the OpenID provider had to wait for the {@link TokenRequestLimiter}
+     *
+     * @param durationNanos
+     *         waiting time in nanoseconds
+     */
+    default void rateLimited(long durationNanos) {
+    }
+
+    /**
+     * A caller had to wait for new tokens to be fetched
+     *
+     * @param durationNanos
+     *         waiting time in nanoseconds
+     */
+    default void callerWait(long durationNanos) {
+    }
+}
@@ -0,0 +1,257 @@
+package com.premiumminds.oidc;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting the requests to a token endpoint, shared by every token manager that calls it, so many token
+ * managers renewing their tokens at the same moment (after a deploy, or once the provider recovers from an outage)
+ * don't trip the provider rate limits.
+ * <p>
+ * Requests within the rate and the burst go through right away, with a single compare and set. The others wait in a
+ * queue ordered by how soon the tokens of their token manager really expire, and are let through one at a time as the
+ * bucket refills, each one delayed by a random jitter of up to a fraction of the interval between requests.
+ */
+public class TokenRequestLimiter {
+    private static final double DEFAULT_JITTER = 0.5; // half the interval between requests
+
+    private static final CompletableFuture<Void> PERMITTED = CompletableFuture.completedFuture(null);
+
+    private static final ConcurrentHashMap<URI, TokenRequestLimiter> SHARED = new ConcurrentHashMap<>();
+
+    private final long interval;
+
+    private final long tolerance;
+
+    private final double jitter;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * When the bucket is full again, as a {@link System#nanoTime()} value
+     */
+    private final AtomicLong full = new AtomicLong(System.nanoTime());
+
+    private final PriorityBlockingQueue<Waiter> waiters = new PriorityBlockingQueue<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Create a new limiter, releasing the waiting requests in a scheduler shared by every limiter
+     *
+     * @param requestsPerSecond
+     *         sustained rate of requests
+     * @param burst
+     *         requests that can go through at once, when no request was made for a while
+     */
+    public TokenRequestLimiter(double requestsPerSecond, int burst) {
+        this(requestsPerSecond, burst, DEFAULT_JITTER, SharedScheduler.INSTANCE);
+    }
+
+    /**
+     * Create a new limiter
+     *
+     * @param requestsPerSecond
+     *         sustained rate of requests
+     * @param burst
+     *         requests that can go through at once, when no request was made for a while
+     * @param jitter
+     *         fraction of the interval between requests to randomly delay each waiting request, between 0 and 1
+     * @param scheduler
+     *         scheduler to release the waiting requests
+     */
+    public TokenRequestLimiter(double requestsPerSecond, int burst, double jitter,
+            ScheduledExecutorService scheduler) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("requests per second must be positive");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+        this.interval = Math.max((long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond), 1);
+        this.tolerance = interval * (burst - 1);
+        this.jitter = jitter;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Get the limiter shared by every token manager of the token endpoint, creating it if needed. The rate and burst
+     * are the ones of the first call for the endpoint.
+     *
+     * @param tokenEndpoint
+     *         token endpoint
+     * @param requestsPerSecond
+     *         sustained rate of requests
+     * @param burst
+     *         requests that can go through at once, when no request was made for a while
+     * @return the limiter
+     */
+    public static TokenRequestLimiter shared(URI tokenEndpoint, double requestsPerSecond, int burst) {
+        return SHARED.computeIfAbsent(tokenEndpoint, key -> new TokenRequestLimiter(requestsPerSecond, burst));
+    }
+
+    /**
+     * Wait until a request can be sent. This method can block.
+     *
+     * @param remaining
+     *         time until the tokens of the caller really expire, 0 or less if it has none
+     * @param unit
+     *         time unit of remaining
+     */
+    public void acquire(long remaining, TimeUnit unit) {
+        CompletableFuture<Void> permit = acquireAsync(remaining, unit);
+        if (permit.isDone()) {
+            return;
+        }
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            permit.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting to send the token request", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed waiting to send the token request", e.getCause());
+        }
+    }
+
+    /**
+     * Wait until a request can be sent, without blocking the caller. The requests that had to wait are released from
+     * the limiter scheduler, so the caller should continue the work in its own executor.
+     *
+     * @param remaining
+     *         time until the tokens of the caller really expire, 0 or less if it has none
+     * @param unit
+     *         time unit of remaining
+     * @return future completed when the request can be sent, already completed if it can be sent right away
+     */
+    public CompletableFuture<Void> acquireAsync(long remaining, TimeUnit unit) {
+        long now = System.nanoTime();
+        if (waiters.isEmpty() && tryAcquire(now) <= 0) {
+            return PERMITTED;
+        }
+        Waiter waiter = new Waiter(now + unit.toNanos(remaining), sequence.getAndIncrement());
+        waiters.add(waiter);
+        startDraining();
+        return waiter.permit;
+    }
+
+    /**
+     * Get the number of requests waiting to be sent
+     *
+     * @return number of waiting requests
+     */
+    public int getQueueLength() {
+        return waiters.size();
+    }
+
+    /**
+     * Take a token from the bucket, if there is one
+     *
+     * @return 0 if a token was taken, otherwise nanoseconds until there is one
+     */
+    private long tryAcquire(long now) {
+        while (true) {
+            long current = full.get();
+            long base = current - now > 0 ? current : now;
+            long wait = base - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (full.compareAndSet(current, base + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    private void startDraining() {
+        if (draining.compareAndSet(false, true)) {
+            schedule(0);
+        }
+    }
+
+    /**
+     * Release the waiting requests, most urgent first, while there are tokens in the bucket. Runs in the scheduler,
+     * one drain at a time.
+     */
+    private void drain() {
+        Waiter next;
+        while ((next = waiters.peek()) != null) {
+            if (next.permit.isDone()) {
+                // cancelled by the caller
+                waiters.remove(next);
+                continue;
+            }
+            long wait = tryAcquire(System.nanoTime());
+            if (wait > 0) {
+                schedule(wait + (long) (ThreadLocalRandom.current().nextDouble() * jitter * interval));
+                return;
+            }
+            waiters.remove(next);
+            next.permit.complete(null);
+        }
+        draining.set(false);
+        // a waiter added after the queue looked empty, but before draining was reset
+        if (!waiters.isEmpty()) {
+            startDraining();
+        }
+    }
+
+    private void schedule(long delay) {
+        try {
+            scheduler.schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // scheduler is shutdown, let everyone through rather than leaving them waiting forever
+            Waiter waiter;
+            while ((waiter = waiters.poll()) != null) {
+                waiter.permit.complete(null);
+            }
+            draining.set(false);
+        }
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+        private final long expiresAt;
+
+        private final long sequence;
+
+        private final CompletableFuture<Void> permit = new CompletableFuture<>();
+
+        private Waiter(long expiresAt, long sequence) {
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            // nanoTime values are compared by their difference, since they can overflow
+            long difference = expiresAt - other.expiresAt;
+            if (difference != 0) {
+                return difference < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oidc-token-rate-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
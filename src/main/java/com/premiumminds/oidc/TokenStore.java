@@ -0,0 +1,51 @@
+package com.premiumminds.oidc;
+
+/**
+ * Tokens shared between token managers, usually in different JVMs, so only one of them talks to the OpenID provider.
+ * <p>
+ * Before fetching new tokens, a token manager looks for valid tokens in the store. If there are none, it takes the
+ * store lease, fetches the tokens and saves them. Token managers that don't get the lease wait for the new tokens to
+ * show up in the store, or for the lease to be released, until their fetch deadline. Past it they fetch the tokens
+ * from the provider themselves, without saving them.
+ *
+ * @param <T>
+ *         token type
+ * @param <R>
+ *         refresh token type
+ */
+public interface TokenStore<T, R> {
+
+    /**
+     * Read the stored tokens
+     *
+     * @return the stored tokens, or null if there are none
+     */
+    StoredTokens<T, R> load();
+
+    /**
+     * Replace the stored tokens
+     *
+     * @param tokens
+     *         tokens to store
+     */
+    void save(StoredTokens<T, R> tokens);
+
+    /**
+     * Try to take the exclusive right to fetch new tokens, without waiting.
+     *
+     * @return the lease, to be closed after saving the new tokens, or null if someone else holds it
+     */
+    Lease tryLease();
+
+    /**
+     * Exclusive right to fetch new tokens
+     */
+    interface Lease extends AutoCloseable {
+
+        /**
+         * Release the lease
+         */
+        @Override
+        void close();
+    }
+}
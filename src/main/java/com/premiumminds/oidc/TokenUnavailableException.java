@@ -0,0 +1,11 @@
+package com.premiumminds.oidc;
+
+/**
+ * There is no valid access token and the OpenID provider is not being called, because it has been failing.
+ */
+public class TokenUnavailableException extends RuntimeException {
+
+    public TokenUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
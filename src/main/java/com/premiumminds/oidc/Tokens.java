@@ -9,11 +9,11 @@ package com.premiumminds.oidc;
  *         refresh token type
  */
 public class Tokens<T, R> {
-    private T accessToken;
+    private final T accessToken;
 
-    private R refreshToken;
+    private final R refreshToken;
 
-    private long expiresIn;
+    private final long expiresIn;
 
     /**
      * Create new tokens DTO
@@ -55,6 +55,7 @@ public class Tokens<T, R> {
      */
     public Tokens(T accessToken, long expiresIn) {
         this.accessToken = accessToken;
+        this.refreshToken = null;
         this.expiresIn = expiresIn;
     }
 
@@ -66,6 +67,7 @@ public class Tokens<T, R> {
      */
     public Tokens(T accessToken) {
         this.accessToken = accessToken;
+        this.refreshToken = null;
         this.expiresIn = -1;
     }
 
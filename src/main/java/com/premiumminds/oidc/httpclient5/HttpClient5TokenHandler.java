@@ -0,0 +1,68 @@
+package com.premiumminds.oidc.httpclient5;
+
+import com.premiumminds.oidc.AuthorizationHeaders;
+import java.io.IOException;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+
+/**
+ * Apache HttpClient 5 execution chain handler that adds the {@code Authorization} header with the access token to
+ * every request. If the server answers 401, the access token is discarded and the request is sent once more with a
+ * new one, unless its entity is not repeatable.
+ * <p>
+ * To use this class, the project must include:
+ * <pre>
+ *      &lt;dependency&gt;
+ *          &lt;groupId&gt;org.apache.httpcomponents.client5&lt;/groupId&gt;
+ *          &lt;artifactId&gt;httpclient5&lt;/artifactId&gt;
+ *      &lt;/dependency&gt;
+ * </pre>
+ * Example:
+ * <pre>
+ *     CloseableHttpClient client = HttpClients.custom()
+ *          .addExecInterceptorFirst("oidc-token", new HttpClient5TokenHandler(
+ *                  new AuthorizationHeaders&lt;&gt;(tokenManager, BearerAccessToken::toAuthorizationHeader)))
+ *          .build();
+ * </pre>
+ */
+public class HttpClient5TokenHandler implements ExecChainHandler {
+    private final AuthorizationHeaders<?> headers;
+
+    /**
+     * Create a new handler
+     *
+     * @param headers
+     *         authorization headers of the token manager
+     */
+    public HttpClient5TokenHandler(AuthorizationHeaders<?> headers) {
+        this.headers = headers;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        String header = headers.get();
+        request.setHeader(HttpHeaders.AUTHORIZATION, header);
+        ClassicHttpResponse response = chain.proceed(request, scope);
+        if (response.getCode() != HttpStatus.SC_UNAUTHORIZED) {
+            return response;
+        }
+
+        HttpEntity entity = request.getEntity();
+        if (entity != null && !entity.isRepeatable()) {
+            return response;
+        }
+        EntityUtils.consume(response.getEntity());
+        response.close();
+        headers.invalidate(header);
+        request.setHeader(HttpHeaders.AUTHORIZATION, headers.get());
+        return chain.proceed(request, scope);
+    }
+}
@@ -0,0 +1,196 @@
+package com.premiumminds.oidc.micrometer;
+
+import com.premiumminds.oidc.ProviderErrorKind;
+import com.premiumminds.oidc.TokenMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token metrics published to a Micrometer {@link MeterRegistry}.
+ * <p>
+ * To use this class, the project must include:
+ * <pre>
+ *      &lt;dependency&gt;
+ *          &lt;groupId&gt;io.micrometer&lt;/groupId&gt;
+ *          &lt;artifactId&gt;micrometer-core&lt;/artifactId&gt;
+ *      &lt;/dependency&gt;
+ * </pre>
+ * Meters:
+ * <ul>
+ *     <li>{@code oidc.token.cache.hits} - access tokens served from cache</li>
+ *     <li>{@code oidc.token.requests} - requests for new tokens, tagged by {@code type} (grant, refresh or exchange)</li>
+ *     <li>{@code oidc.token.refresh.fallbacks} - refresh token requests that failed and fell back to a grant</li>
+ *     <li>{@code oidc.token.retries} - failed requests for new tokens sent again, tagged by {@code kind}</li>
+ *     <li>{@code oidc.token.errors} - failures to fetch new tokens, tagged by {@code cause}</li>
+ *     <li>{@code oidc.token.provider.requests} - duration of the requests to the token endpoint</li>
+ *     <li>{@code oidc.token.hedges} - slow requests sent again to another token endpoint</li>
+ *     <li>{@code oidc.token.rate.limited} - time requests to the token endpoint waited for the rate limiter</li>
+ *     <li>{@code oidc.token.caller.wait} - time callers waited for new tokens</li>
+ * </ul>
+ */
+public class MicrometerTokenMetrics implements TokenMetrics {
+    private final MeterRegistry registry;
+
+    private final Tags tags;
+
+    private final Counter cacheHits;
+
+    private final Counter grants;
+
+    private final Counter refreshes;
+
+    private final Counter exchanges;
+
+    private final Counter refreshFallbacks;
+
+    private final Counter hedges;
+
+    private final Timer providerRequests;
+
+    private final Timer callerWait;
+
+    private final Timer rateLimited;
+
+    private final ConcurrentMap<String, Counter> errors = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<ProviderErrorKind, Counter> retries = new ConcurrentHashMap<>();
+
+    /**
+     * Create new metrics
+     *
+     * @param registry
+     *         meter registry
+     * @param tags
+     *         tags added to every meter, to tell apart the token managers
+     */
+    public MicrometerTokenMetrics(MeterRegistry registry, Tag... tags) {
+        this(registry, Tags.of(tags));
+    }
+
+    /**
+     * Create new metrics
+     *
+     * @param registry
+     *         meter registry
+     * @param tags
+     *         tags added to every meter, to tell apart the token managers
+     */
+    public MicrometerTokenMetrics(MeterRegistry registry, Iterable<Tag> tags) {
+        this.registry = registry;
+        this.tags = Tags.of(tags);
+        this.cacheHits = Counter.builder("oidc.token.cache.hits")
+                .description("Access tokens served from cache")
+                .tags(this.tags)
+                .register(registry);
+        this.grants = Counter.builder("oidc.token.requests")
+                .description("Requests for new tokens")
+                .tags(this.tags).tag("type", "grant")
+                .register(registry);
+        this.refreshes = Counter.builder("oidc.token.requests")
+                .description("Requests for new tokens")
+                .tags(this.tags).tag("type", "refresh")
+                .register(registry);
+        this.exchanges = Counter.builder("oidc.token.requests")
+                .description("Requests for new tokens")
+                .tags(this.tags).tag("type", "exchange")
+                .register(registry);
+        this.refreshFallbacks = Counter.builder("oidc.token.refresh.fallbacks")
+                .description("Refresh token requests that failed and fell back to the authorization grant")
+                .tags(this.tags)
+                .register(registry);
+        this.hedges = Counter.builder("oidc.token.hedges")
+                .description("Slow requests to the token endpoint sent again to another token endpoint")
+                .tags(this.tags)
+                .register(registry);
+        this.providerRequests = Timer.builder("oidc.token.provider.requests")
+                .description("Duration of the requests to the token endpoint")
+                .tags(this.tags)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.rateLimited = Timer.builder("oidc.token.rate.limited")
+                .description("Time requests to the token endpoint waited for the rate limiter")
+                .tags(this.tags)
+                .register(registry);
+        this.callerWait = Timer.builder("oidc.token.caller.wait")
+                .description("Time callers waited for new tokens")
+                .tags(this.tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void grant() {
+        grants.increment();
+    }
+
+    @Override
+    public void refresh() {
+        refreshes.increment();
+    }
+
+    @Override
+    public void exchange() {
+        exchanges.increment();
+    }
+
+    @Override
+    public void refreshFallback(Throwable cause) {
+        refreshFallbacks.increment();
+    }
+
+    @Override
+    public void hedge() {
+        hedges.increment();
+    }
+
+    @Override
+    public void retry(Throwable cause) {
+        retries.computeIfAbsent(ProviderErrorKind.of(cause), kind -> Counter.builder("oidc.token.retries")
+                .description("Failed requests for new tokens sent again")
+                .tags(tags).tag("kind", kind.name().toLowerCase(Locale.ROOT))
+                .register(registry)).increment();
+    }
+
+    @Override
+    public void error(Throwable cause) {
+        errors.computeIfAbsent(cause(cause), name -> Counter.builder("oidc.token.errors")
+                .description("Failures to fetch new tokens")
+                .tags(tags).tag("cause", name)
+                .register(registry)).increment();
+    }
+
+    @Override
+    public void providerRequest(long durationNanos) {
+        providerRequests.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void rateLimited(long durationNanos) {
+        rateLimited.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void callerWait(long durationNanos) {
+        callerWait.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The provider exceptions wrap the real cause, like an {@link java.io.IOException}, so use it when there is one
+     */
+    private static String cause(Throwable e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause.getClass().getSimpleName();
+    }
+}
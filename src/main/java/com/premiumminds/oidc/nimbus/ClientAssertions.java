@@ -0,0 +1,196 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.oauth2.sdk.auth.ClientAuthentication;
+import com.nimbusds.oauth2.sdk.auth.JWTAuthentication;
+import com.nimbusds.oauth2.sdk.auth.JWTAuthenticationClaimsSet;
+import com.nimbusds.oauth2.sdk.id.Audience;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.JWTID;
+import java.net.URI;
+import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Signed JWT client assertions ({@code private_key_jwt} and {@code client_secret_jwt}), signed ahead of time so token
+ * requests don't wait for the signature.
+ * <p>
+ * Each assertion has a new {@code jti}. By default an assertion is used only once: once new tokens are received, the
+ * next one is signed in background shortly before the request that will renew them, so its {@code iat} is recent
+ * when it is sent. An assertion signed ahead of time is not sent once older than a minute. Providers that accept a
+ * {@code jti} more than once can reuse the assertion until half its lifetime, when its replacement is signed in
+ * background.
+ */
+final class ClientAssertions implements ClientAuthenticator {
+    private static final long MAX_REMAINING = 30000; // 30 seconds
+
+    private static final long MAX_AGE = 60000; // 1 minute, for assertions used once
+
+    private static final long SIGN_AHEAD = 5000; // 5 seconds before the next token request
+
+    private final ClientID clientID;
+
+    private final Signer signer;
+
+    private final long lifetime;
+
+    private final boolean reuse;
+
+    private final Executor executor;
+
+    private final LongUnaryOperator nextRequest;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final LongSupplier clock;
+
+    private final AtomicReference<Assertion> ready = new AtomicReference<>();
+
+    private final AtomicBoolean signing = new AtomicBoolean();
+
+    private final AtomicReference<ScheduledFuture<?>> scheduled = new AtomicReference<>();
+
+    /**
+     * @param lifetime
+     *         milliseconds each assertion is valid
+     * @param reuse
+     *         if an assertion can be used more than once
+     * @param executor
+     *         executor to sign the assertions in background
+     * @param nextRequest
+     *         milliseconds from receiving tokens with a lifetime to the request that renews them
+     */
+    ClientAssertions(ClientID clientID, Signer signer, long lifetime, boolean reuse, Executor executor,
+            LongUnaryOperator nextRequest) {
+        this(clientID, signer, lifetime, reuse, executor, nextRequest, SharedScheduler.INSTANCE,
+                System::currentTimeMillis);
+    }
+
+    ClientAssertions(ClientID clientID, Signer signer, long lifetime, boolean reuse, Executor executor,
+            LongUnaryOperator nextRequest, ScheduledExecutorService scheduler, LongSupplier clock) {
+        this.clientID = clientID;
+        this.signer = signer;
+        this.lifetime = lifetime;
+        this.reuse = reuse;
+        this.executor = executor;
+        this.nextRequest = nextRequest;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    @Override
+    public ClientAuthentication authenticate(URI tokenEndpoint) {
+        long now = clock.getAsLong();
+        Assertion assertion = reuse ? ready.get() : ready.getAndSet(null);
+        if (assertion == null || !assertion.usable(tokenEndpoint, now)) {
+            assertion = sign(tokenEndpoint, now);
+            if (reuse) {
+                ready.set(assertion);
+            }
+        }
+        if (reuse && now > assertion.renewAt) {
+            signInBackground(tokenEndpoint);
+        }
+        return assertion.authentication;
+    }
+
+    @Override
+    public void prepare(URI tokenEndpoint, long expiresIn) {
+        if (reuse || expiresIn < 0) {
+            return;
+        }
+        long delay = Math.max(nextRequest.applyAsLong(expiresIn) - SIGN_AHEAD, 0);
+        ScheduledFuture<?> next;
+        try {
+            next = scheduler.schedule(() -> signInBackground(tokenEndpoint), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // scheduler is shutdown, signed when needed
+            return;
+        }
+        ScheduledFuture<?> previous = scheduled.getAndSet(next);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    private void signInBackground(URI tokenEndpoint) {
+        if (!signing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    ready.set(sign(tokenEndpoint, clock.getAsLong()));
+                } catch (RuntimeException e) {
+                    // signed when needed
+                } finally {
+                    signing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            signing.set(false);
+        }
+    }
+
+    private Assertion sign(URI tokenEndpoint, long now) {
+        JWTAuthenticationClaimsSet claims =
+                new JWTAuthenticationClaimsSet(clientID, new Audience(tokenEndpoint).toSingleAudienceList(),
+                        new Date(now + lifetime), null, new Date(now), new JWTID());
+        try {
+            return new Assertion(signer.sign(claims), tokenEndpoint, now, lifetime, reuse ? Long.MAX_VALUE : MAX_AGE);
+        } catch (JOSEException e) {
+            throw new OIDCProviderRequestException("client assertion signing problem", e);
+        }
+    }
+
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oidc-client-assertions");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Signs the client assertion claims
+     */
+    interface Signer {
+        JWTAuthentication sign(JWTAuthenticationClaimsSet claims) throws JOSEException;
+    }
+
+    private static final class Assertion {
+        private final JWTAuthentication authentication;
+
+        private final URI audience;
+
+        /**
+         * Time after which it's not sent anymore, leaving room for the request to reach the provider
+         */
+        private final long usableUntil;
+
+        /**
+         * Time after which a reused assertion is replaced
+         */
+        private final long renewAt;
+
+        private Assertion(JWTAuthentication authentication, URI audience, long issuedAt, long lifetime, long maxAge) {
+            this.authentication = authentication;
+            this.audience = audience;
+            this.usableUntil = issuedAt + Math.min(lifetime - Math.min(lifetime / 2, MAX_REMAINING), maxAge);
+            this.renewAt = issuedAt + lifetime / 2;
+        }
+
+        private boolean usable(URI tokenEndpoint, long now) {
+            return now < usableUntil && audience.equals(tokenEndpoint);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.auth.ClientAuthentication;
+import java.net.URI;
+
+/**
+ * How a client authenticates to the token endpoint
+ */
+interface ClientAuthenticator {
+
+    /**
+     * Public client, that doesn't authenticate
+     */
+    ClientAuthenticator NONE = tokenEndpoint -> null;
+
+    /**
+     * Get the client authentication for the next token request
+     *
+     * @param tokenEndpoint
+     *         token endpoint the request is sent to
+     * @return client authentication, or null for a public client
+     */
+    ClientAuthentication authenticate(URI tokenEndpoint);
+
+    /**
+     * Get ready for the request that will renew the tokens just received
+     *
+     * @param tokenEndpoint
+     *         token endpoint the tokens came from
+     * @param expiresIn
+     *         lifetime of the access token in milliseconds, -1 if it never expires
+     */
+    default void prepare(URI tokenEndpoint, long expiresIn) {
+    }
+
+    /**
+     * @return authenticator that always uses the same client authentication
+     */
+    static ClientAuthenticator of(ClientAuthentication authentication) {
+        return tokenEndpoint -> authentication;
+    }
+}
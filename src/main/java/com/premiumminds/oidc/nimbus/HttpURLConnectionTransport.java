@@ -0,0 +1,21 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.http.HTTPRequest;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import java.io.IOException;
+
+/**
+ * Transport using the Nimbus {@link HTTPRequest#send()}, on top of {@link java.net.HttpURLConnection}. This is the
+ * default transport.
+ */
+public class HttpURLConnectionTransport implements TokenEndpointTransport {
+    /**
+     * Transport of the builders that don't set one, so they share their discovery caches
+     */
+    static final HttpURLConnectionTransport DEFAULT = new HttpURLConnectionTransport();
+
+    @Override
+    public HTTPResponse send(HTTPRequest request) throws IOException {
+        return request.send();
+    }
+}
@@ -1,24 +1,64 @@
 package com.premiumminds.oidc.nimbus;
 
+import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.oauth2.sdk.AuthorizationGrant;
 import com.nimbusds.oauth2.sdk.ClientCredentialsGrant;
 import com.nimbusds.oauth2.sdk.ResourceOwnerPasswordCredentialsGrant;
 import com.nimbusds.oauth2.sdk.Scope;
 import com.nimbusds.oauth2.sdk.as.AuthorizationServerEndpointMetadata;
+import com.nimbusds.oauth2.sdk.assertions.jwt.JWTAssertionFactory;
+import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
+import com.nimbusds.oauth2.sdk.auth.ClientSecretJWT;
+import com.nimbusds.oauth2.sdk.auth.PKITLSClientAuthentication;
+import com.nimbusds.oauth2.sdk.auth.PrivateKeyJWT;
 import com.nimbusds.oauth2.sdk.auth.Secret;
 import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.Issuer;
 import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.RefreshToken;
 import com.nimbusds.openid.connect.sdk.op.OIDCProviderMetadata;
+import com.premiumminds.oidc.AdaptiveExpireThreshold;
+import com.premiumminds.oidc.AsyncTokenManager;
+import com.premiumminds.oidc.DefaultExecutor;
+import com.premiumminds.oidc.FallbackPolicy;
+import com.premiumminds.oidc.FileTokenStore;
+import com.premiumminds.oidc.HedgingOpenIDProvider;
+import com.premiumminds.oidc.OpenIDProvider;
+import com.premiumminds.oidc.ResiliencePolicy;
+import com.premiumminds.oidc.ScheduledTokenManager;
+import com.premiumminds.oidc.TokenClock;
 import com.premiumminds.oidc.TokenManager;
 import com.premiumminds.oidc.TokenManagerImpl;
+import com.premiumminds.oidc.TokenManagerRegistry;
+import com.premiumminds.oidc.TokenMetrics;
+import com.premiumminds.oidc.TokenRequestLimiter;
+import com.premiumminds.oidc.TokenStore;
+import com.premiumminds.oidc.Tokens;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
 import java.util.function.Supplier;
+import javax.crypto.SecretKey;
+import javax.net.ssl.SSLSocketFactory;
 
 /**
  * Token manager using the Nimbus OAuth 2.0 SDK with OpenID Connect extensions.
@@ -34,10 +74,14 @@ import java.util.function.Supplier;
 public class NimbusOIDCTokenManagerBuilder {
     private final Supplier<URI> providerTokenEndpoint;
 
+    private Issuer issuer; // discovered on build, with the transport and timeouts of this builder
+
     private final ClientID clientID;
 
     private Secret clientSecret;
 
+    private final Map<ClientID, Secret> clientSecrets = new HashMap<>();
+
     private AuthorizationGrant authorizationGrant = new ClientCredentialsGrant();
 
     private Scope scope = new Scope();
@@ -48,8 +92,68 @@ public class NimbusOIDCTokenManagerBuilder {
 
     private int expireThreshold = 5000; // default 5 seconds
 
+    private AdaptiveExpireThreshold adaptiveExpireThreshold;
+
     private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 
+    private boolean backgroundRefresh = false;
+
+    private ScheduledExecutorService refreshScheduler;
+
+    private double refreshRatio = 0.75; // default 75% of the token lifetime
+
+    private double refreshJitter = 0.1; // default 10% of the refresh delay
+
+    private Executor executor = DefaultExecutor.get();
+
+    private TokenEndpointTransport transport = HttpURLConnectionTransport.DEFAULT;
+
+    private TokenMetrics metrics = TokenMetrics.NOOP;
+
+    private ResiliencePolicy resilience;
+
+    private Function<TokenKey, TokenStore<BearerAccessToken, RefreshToken>> tokenStores;
+
+    private TokenClock clock = TokenClock.SYSTEM;
+
+    private long defaultTokenLifetime = 60000; // default 1 minute
+
+    private long clockSkew = 60000; // default 1 minute
+
+    private long minForcedRefreshInterval = 1000; // 1 second
+
+    private FallbackPolicy fallbackPolicy = FallbackPolicy.retrying(1);
+
+    private long deadline = -1; // default twice the connect plus read timeouts
+
+    private boolean streamingResponseParser;
+
+    private TokenRequestLimiter rateLimiter;
+
+    private double rateLimit; // requests per second, 0 for none
+
+    private int rateLimitBurst;
+
+    private final List<TokenListener> tokenListeners = new ArrayList<>();
+
+    private final List<URI> additionalTokenEndpoints = new ArrayList<>();
+
+    private long hedgeDelay = 1000; // default 1 second
+
+    private PrivateKey privateKey;
+
+    private JWSAlgorithm privateKeyAlgorithm;
+
+    private String privateKeyID;
+
+    private boolean clientSecretJWT = false;
+
+    private SSLSocketFactory tlsSocketFactory;
+
+    private long clientAssertionLifetime = 300000; // default 5 minutes
+
+    private boolean reuseClientAssertions = false;
+
     /**
      * Create a new builder
      *
@@ -77,6 +181,22 @@ public class NimbusOIDCTokenManagerBuilder {
         this.clientID = clientID;
     }
 
+    /**
+     * Create a new builder. The token endpoint comes from the issuer discovery document, requested with the transport
+     * and timeouts of this builder, shared by every token manager of the issuer with the same ones and renewed in
+     * background.
+     *
+     * @param issuer
+     *         OIDC provider issuer
+     * @param clientID
+     *         client id
+     * @see ProviderMetadataCache#shared(Issuer, TokenEndpointTransport, int, int)
+     */
+    public NimbusOIDCTokenManagerBuilder(Issuer issuer, ClientID clientID) {
+        this((Supplier<URI>) null, clientID);
+        this.issuer = issuer;
+    }
+
     /**
      * Create a new builder
      *
@@ -130,6 +250,22 @@ public class NimbusOIDCTokenManagerBuilder {
         this.clientID = new ClientID(clientID);
     }
 
+    /**
+     * Create a new builder. The token endpoint comes from the issuer discovery document, requested with the transport
+     * and timeouts of this builder, shared by every token manager of the issuer with the same ones and renewed in
+     * background.
+     *
+     * @param issuer
+     *         OIDC provider issuer
+     * @param clientID
+     *         client id
+     * @see ProviderMetadataCache#shared(Issuer, TokenEndpointTransport, int, int)
+     */
+    public NimbusOIDCTokenManagerBuilder(Issuer issuer, String clientID) {
+        this((Supplier<URI>) null, new ClientID(clientID));
+        this.issuer = issuer;
+    }
+
     /**
      * Create a new builder
      *
@@ -180,6 +316,21 @@ public class NimbusOIDCTokenManagerBuilder {
         return this;
     }
 
+    /**
+     * Specify the client secret of another client id, used by the token managers of a registry built with
+     * {@link #buildRegistry(int, long, TimeUnit)}
+     *
+     * @param clientID
+     *         client id
+     * @param secret
+     *         client secret
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder clientSecret(ClientID clientID, Secret secret) {
+        this.clientSecrets.put(clientID, secret);
+        return this;
+    }
+
     /**
      * Specify an authorization grant.
      * <p>
@@ -293,6 +444,22 @@ public class NimbusOIDCTokenManagerBuilder {
      */
     public NimbusOIDCTokenManagerBuilder expireThreshold(int expireThreshold) {
         this.expireThreshold = expireThreshold;
+        this.adaptiveExpireThreshold = null;
+        return this;
+    }
+
+    /**
+     * Set an expiring threshold that follows how long the requests to the token endpoint take, shared by every token
+     * manager built, so it learns from all their requests.
+     * <p>
+     * Default: the fixed threshold of {@link #expireThreshold(int)}
+     *
+     * @param expireThreshold
+     *         adaptive threshold
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder expireThreshold(AdaptiveExpireThreshold expireThreshold) {
+        this.adaptiveExpireThreshold = expireThreshold;
         return this;
     }
 
@@ -343,16 +510,677 @@ public class NimbusOIDCTokenManagerBuilder {
         return this;
     }
 
+    /**
+     * Renew the tokens in background, before they expire, using a dedicated thread. The token manager must be closed
+     * when no longer needed.
+     * <p>
+     * Default: disabled
+     *
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder backgroundRefresh() {
+        this.backgroundRefresh = true;
+        this.refreshScheduler = null;
+        return this;
+    }
+
+    /**
+     * Renew the tokens in background, before they expire, using the given scheduler. The scheduler is not shutdown
+     * when the token manager is closed, so it can be shared between token managers.
+     * <p>
+     * Default: disabled
+     *
+     * @param scheduler
+     *         scheduler to run the background refreshes
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder backgroundRefresh(ScheduledExecutorService scheduler) {
+        this.backgroundRefresh = true;
+        this.refreshScheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Set the fraction of the token lifetime after which the background refresh renews the tokens.
+     * <p>
+     * Default: 0.75
+     *
+     * @param ratio
+     *         value between 0 and 1
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder backgroundRefreshRatio(double ratio) {
+        this.refreshRatio = ratio;
+        return this;
+    }
+
+    /**
+     * Set the fraction of the background refresh delay that is randomly added or subtracted, so many token managers
+     * don't renew their tokens at the same moment.
+     * <p>
+     * Default: 0.1
+     *
+     * @param jitter
+     *         value between 0 and 1
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder backgroundRefreshJitter(double jitter) {
+        this.refreshJitter = jitter;
+        return this;
+    }
+
+    /**
+     * Set the executor used by the asynchronous token manager to run the requests to the token endpoint.
+     * <p>
+     * Default: {@link DefaultExecutor}, the common fork join pool or virtual threads on Java 21 or later
+     *
+     * @param executor
+     *         executor
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Set the transport used to send the requests to the token endpoint. The same transport can be shared by many
+     * token managers, for example a {@code JavaHttpClientTransport} to share its connection pool.
+     * <p>
+     * Default: {@link HttpURLConnectionTransport}
+     *
+     * @param transport
+     *         transport
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder transport(TokenEndpointTransport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Set the listener of the token lifecycle, to collect metrics like cache hits, grants, refreshes and the duration
+     * of the requests to the token endpoint.
+     * <p>
+     * Default: {@link TokenMetrics#NOOP}
+     *
+     * @param metrics
+     *         metrics listener
+     * @return the builder
+     * @see com.premiumminds.oidc.micrometer.MicrometerTokenMetrics
+     */
+    public NimbusOIDCTokenManagerBuilder metrics(TokenMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Set how to behave when the OpenID provider is slow or failing: keep serving the access token until it really
+     * expires while new tokens are fetched in background, with retries and a circuit breaker.
+     * <p>
+     * Default: none
+     *
+     * @param policy
+     *         resilience policy
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder resilience(ResiliencePolicy policy) {
+        this.resilience = policy;
+        return this;
+    }
+
+    /**
+     * Share the tokens with token managers in other JVMs through a token store, so only one of them fetches new
+     * tokens from the provider. The store is only used by {@link #build()} and {@link #buildAsync()}; for a registry
+     * use {@link #tokenStore(Function)}.
+     * <p>
+     * Default: none
+     *
+     * @param store
+     *         token store
+     * @return the builder
+     * @see com.premiumminds.oidc.FileTokenStore
+     * @see NimbusTokenCodecs
+     */
+    public NimbusOIDCTokenManagerBuilder tokenStore(TokenStore<BearerAccessToken, RefreshToken> store) {
+        this.tokenStores = key -> {
+            if (!key.equals(new TokenKey(clientID, scope))) {
+                throw new IllegalStateException("token store is not shared between token keys, use a store factory");
+            }
+            return store;
+        };
+        return this;
+    }
+
+    /**
+     * Share the tokens with token managers in other JVMs through token stores, one for each token key, so only one
+     * of them fetches new tokens from the provider.
+     * <p>
+     * Default: none
+     *
+     * @param stores
+     *         creates the token store for a token key
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder tokenStore(
+            Function<TokenKey, TokenStore<BearerAccessToken, RefreshToken>> stores) {
+        this.tokenStores = stores;
+        return this;
+    }
+
+    /**
+     * Keep the tokens in encrypted files in a local directory, one for each token key, so a restarted JVM reuses the
+     * tokens while they are valid instead of asking the provider for new ones. The files are written every time the
+     * tokens are renewed, and read when the token manager is built. This replaces any {@link #tokenStore(TokenStore)}.
+     * <p>
+     * Default: none
+     *
+     * @param directory
+     *         directory of the token files, which must exist
+     * @param key
+     *         AES key to encrypt the files, for example from {@code new SecretKeySpec(bytes, "AES")}
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder persistentCache(Path directory, SecretKey key) {
+        this.tokenStores = tokenKey -> new FileTokenStore<>(directory.resolve(fileName(tokenKey)),
+                NimbusTokenCodecs.ACCESS_TOKEN, NimbusTokenCodecs.REFRESH_TOKEN, key);
+        return this;
+    }
+
+    /**
+     * Authenticate the client with a JWT signed with its private key ({@code private_key_jwt}) instead of the client
+     * secret.
+     *
+     * @param privateKey
+     *         RSA or EC private key of the client
+     * @param algorithm
+     *         signature algorithm, matching the key
+     * @param keyID
+     *         key id to set in the JWT header, or null
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder privateKeyJWT(PrivateKey privateKey, JWSAlgorithm algorithm, String keyID) {
+        if (!(privateKey instanceof RSAPrivateKey) && !(privateKey instanceof ECPrivateKey)) {
+            throw new IllegalArgumentException("only RSA and EC private keys are supported");
+        }
+        this.privateKey = privateKey;
+        this.privateKeyAlgorithm = algorithm;
+        this.privateKeyID = keyID;
+        return this;
+    }
+
+    /**
+     * Authenticate the client with a JWT signed (HS256) with the client secret ({@code client_secret_jwt}) instead of
+     * sending the client secret.
+     *
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder clientSecretJWT() {
+        this.clientSecretJWT = true;
+        return this;
+    }
+
+    /**
+     * Authenticate the client with its TLS certificate ({@code tls_client_auth}). The socket factory is used by the
+     * default transport; with a {@code JavaHttpClientTransport}, build its {@code HttpClient} with the same SSL
+     * context instead.
+     *
+     * @param socketFactory
+     *         socket factory with the client certificate
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder tlsClientAuth(SSLSocketFactory socketFactory) {
+        this.tlsSocketFactory = socketFactory;
+        return this;
+    }
+
+    /**
+     * Set how long the JWT client assertions are valid. Each assertion is signed in background shortly before the
+     * request that renews the tokens, so that request doesn't wait for the signature.
+     * <p>
+     * Default: 5 minutes
+     *
+     * @param lifetime
+     *         assertion lifetime
+     * @param unit
+     *         lifetime unit
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder clientAssertionLifetime(long lifetime, TimeUnit unit) {
+        this.clientAssertionLifetime = unit.toMillis(lifetime);
+        return this;
+    }
+
+    /**
+     * Reuse each JWT client assertion, with the same {@code jti}, until half its lifetime. Only for providers that
+     * don't require the {@code jti} to be unique.
+     * <p>
+     * Default: each assertion is used once
+     *
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder reuseClientAssertions() {
+        this.reuseClientAssertions = true;
+        return this;
+    }
+
+    /**
+     * Set the source of time of the token managers, for example a {@link com.premiumminds.oidc.CoarseTokenClock} to
+     * make checking if the access token expired cheaper.
+     * <p>
+     * Default: {@link TokenClock#SYSTEM}
+     *
+     * @param clock
+     *         clock
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder clock(TokenClock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Set the lifetime of the access tokens the provider doesn't give one for: opaque access tokens, or JWTs without
+     * an {@code exp} claim, in a response without {@code expires_in}. Set it to the default lifetime of the provider
+     * access tokens, or less.
+     * <p>
+     * The real lifetime of such access tokens can't be known: an access token that lives less than this is still used
+     * after it expires, and one that lives longer is fetched again before it needs to be. With 0, they are fetched
+     * again on every call.
+     * <p>
+     * Default: 1 minute
+     *
+     * @param lifetime
+     *         access token lifetime
+     * @param unit
+     *         lifetime unit
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder defaultTokenLifetime(long lifetime, TimeUnit unit) {
+        this.defaultTokenLifetime = unit.toMillis(lifetime);
+        return this;
+    }
+
+    /**
+     * Set the maximum difference between the clock of this host and the provider one. It is only used for JWT access
+     * tokens with an {@code exp} but no {@code iat} claim, in a response without {@code expires_in}: their lifetime is
+     * counted from when the response was received, less this skew, so they are not kept past their expiration when
+     * our clock is behind the provider one.
+     * <p>
+     * Default: 1 minute
+     *
+     * @param skew
+     *         maximum clock skew
+     * @param unit
+     *         skew unit
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder clockSkew(long skew, TimeUnit unit) {
+        this.clockSkew = unit.toMillis(skew);
+        return this;
+    }
+
+    /**
+     * Set the minimum time between refreshes forced by {@link TokenManager#invalidate(Object)}, to protect the
+     * provider from resource servers that keep rejecting new tokens.
+     * <p>
+     * Default: 1 second
+     *
+     * @param interval
+     *         minimum interval, 0 for none
+     * @param unit
+     *         time unit of the interval
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder minForcedRefreshInterval(long interval, TimeUnit unit) {
+        this.minForcedRefreshInterval = unit.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * Set what to do when a request to the token endpoint fails, depending on why it failed.
+     * <p>
+     * Default: {@link FallbackPolicy#retrying(int)} with 1 retry, so only a rejected refresh token falls back to the
+     * authorization grant
+     *
+     * @param policy
+     *         fallback policy
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder fallbackPolicy(FallbackPolicy policy) {
+        this.fallbackPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Parse the token endpoint responses in a single pass, reading only the access token, its type and lifetime, the
+     * refresh token and the scope. The ID token and any other field are skipped without being parsed, which saves
+     * most of the allocation of the Nimbus parser when many tokens are renewed. Error responses, and anything the
+     * streaming parser does not handle, are still parsed by Nimbus.
+     *
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder streamingResponseParser() {
+        this.streamingResponseParser = true;
+        return this;
+    }
+
+    /**
+     * Set the maximum time spent fetching new tokens, across the retries and the fallback to the authorization
+     * grant. No new request is sent to the token endpoint once it passes.
+     * <p>
+     * Default: twice the connect timeout plus the read timeout, room for a refresh token request that takes them whole
+     * and the grant request it falls back to. Timeouts are not retried by the default fallback policy.
+     *
+     * @param deadline
+     *         maximum time, 0 for none
+     * @param unit
+     *         time unit of the deadline
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder deadline(long deadline, TimeUnit unit) {
+        this.deadline = unit.toMillis(deadline);
+        return this;
+    }
+
+    /**
+     * Limit the requests to the token endpoint, across every token manager of this JVM that calls the same token
+     * endpoint with a rate limit, so many token managers renewing their tokens at the same moment don't trip the
+     * provider rate limits. Requests over the limit wait, the ones of token managers whose tokens expire sooner first.
+     * <p>
+     * The token endpoint is resolved when the token manager is built. The rate and burst of the limiter are the ones
+     * of the first token manager built for the endpoint.
+     * <p>
+     * Default: none
+     *
+     * @param requestsPerSecond
+     *         sustained rate of requests
+     * @param burst
+     *         requests that can go through at once, when no request was made for a while
+     * @return the builder
+     * @see TokenRequestLimiter#shared(URI, double, int)
+     */
+    public NimbusOIDCTokenManagerBuilder rateLimit(double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("requests per second must be positive");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        this.rateLimit = requestsPerSecond;
+        this.rateLimitBurst = burst;
+        return this;
+    }
+
+    /**
+     * Limit the requests to the token endpoint with the given limiter, for example one shared by the token managers
+     * of several token endpoints of the same provider. Overrides {@link #rateLimit(double, int)}.
+     * <p>
+     * Default: none
+     *
+     * @param limiter
+     *         request limiter
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder rateLimiter(TokenRequestLimiter limiter) {
+        this.rateLimiter = limiter;
+        return this;
+    }
+
+    /**
+     * Send the requests also to other token endpoints of the same provider, for example the ones of other regions.
+     * Requests go to the fastest healthy endpoint, fail over to the next one on timeouts, connection failures and
+     * 5xx errors, and grant requests slower than the 95th percentile of the recent response times are hedged to the
+     * next endpoint, taking the first success.
+     * <p>
+     * Default: none, only the builder token endpoint
+     *
+     * @param tokenEndpoints
+     *         other token endpoints, in order of preference
+     * @return the builder
+     * @see HedgingOpenIDProvider
+     */
+    public NimbusOIDCTokenManagerBuilder additionalTokenEndpoints(URI... tokenEndpoints) {
+        this.additionalTokenEndpoints.addAll(Arrays.asList(tokenEndpoints));
+        return this;
+    }
+
+    /**
+     * Set the time to wait before hedging a request to a token endpoint with too few responses to know its latency.
+     * Only used with {@link #additionalTokenEndpoints(URI...)}.
+     * <p>
+     * Default: 1 second
+     *
+     * @param delay
+     *         initial hedge delay
+     * @param unit
+     *         time unit of the delay
+     * @return the builder
+     */
+    public NimbusOIDCTokenManagerBuilder hedgeDelay(long delay, TimeUnit unit) {
+        this.hedgeDelay = unit.toMillis(delay);
+        return this;
+    }
+
+    /**
+     * Deliver the new tokens of the token managers to a listener, as soon as they are fetched, for consumers that
+     * hold on to the access token for a long time, like gRPC channels or Kafka clients.
+     *
+     * @param listener
+     *         listener of the new tokens
+     * @param executor
+     *         executor to run the listener
+     * @return the builder
+     * @see TokenManagerImpl#onTokenChanged(Consumer, Executor)
+     */
+    public NimbusOIDCTokenManagerBuilder onTokenChanged(Consumer<Tokens<BearerAccessToken, RefreshToken>> listener,
+            Executor executor) {
+        this.tokenListeners.add(new TokenListener(listener, executor));
+        return this;
+    }
+
     /**
      * Build a new TokenManager
      *
      * @return the token manager
      */
     public TokenManager<BearerAccessToken> build() {
+        return buildAsync();
+    }
+
+    /**
+     * Build a new TokenManager that can also retrieve the access token without blocking the caller
+     *
+     * @return the token manager
+     */
+    public AsyncTokenManager<BearerAccessToken> buildAsync() {
+        if (!backgroundRefresh || refreshScheduler != null) {
+            return build(clientID, clientSecret, scope, null, refreshScheduler, false);
+        }
+        return build(clientID, clientSecret, scope, null, newRefreshScheduler(), true);
+    }
+
+    /**
+     * Build a new registry of token managers, one for each token key, all sharing this builder configuration. The
+     * client secret for each client id is the one configured with {@link #clientSecret(ClientID, Secret)}, or the
+     * builder client secret for the builder client id.
+     * <p>
+     * If background refresh is enabled, every token manager in the registry shares the same scheduler. The registry
+     * must be closed when no longer needed.
+     *
+     * @param maximumSize
+     *         maximum number of token managers
+     * @param expireAfterAccess
+     *         time after which a token manager not used is evicted and closed
+     * @param unit
+     *         time unit of expireAfterAccess
+     * @return the registry
+     */
+    public TokenManagerRegistry<TokenKey, BearerAccessToken> buildRegistry(int maximumSize, long expireAfterAccess,
+            TimeUnit unit) {
+        Map<ClientID, Secret> secrets = new HashMap<>(clientSecrets);
+        if (clientSecret != null) {
+            secrets.putIfAbsent(clientID, clientSecret);
+        }
+
+        ScheduledExecutorService scheduler = refreshScheduler;
+        Runnable onClose = () -> {};
+        if (backgroundRefresh && scheduler == null) {
+            scheduler = newRefreshScheduler();
+            onClose = scheduler::shutdownNow;
+        }
+
+        ScheduledExecutorService sharedScheduler = scheduler;
+        return new TokenManagerRegistry<>(
+                key -> build(key.getClientID(), secrets.get(key.getClientID()), key.getScope(),
+                        key.getResource() != null ? Collections.singletonList(key.getResource()) : null,
+                        sharedScheduler, false), maximumSize, expireAfterAccess, unit, onClose);
+    }
+
+    /**
+     * Build a new token exchange manager, to exchange the access tokens of the callers of a service for access tokens
+     * to call other services on their behalf (RFC 8693). The client authentication, timeouts, transport, headers,
+     * scope, expire threshold, clock and metrics are the ones of this builder; the authorization grant is not used.
+     *
+     * @param maximumSize
+     *         maximum number of exchanged access tokens to cache
+     * @return the token exchange manager
+     */
+    public TokenExchangeManager buildTokenExchange(int maximumSize) {
         OpenIDProviderImpl provider =
-                new OpenIDProviderImpl(providerTokenEndpoint, clientID, clientSecret, authorizationGrant, scope,
-                        connectTimeout, readTimeout, headers);
+                newProvider(tokenEndpoint(), clientID, newAuthenticator(clientID, clientSecret), scope, null);
+        return new TokenExchangeManager(provider, TokenExchangeGrant.ACCESS_TOKEN_TYPE, expireThreshold, maximumSize,
+                clock, metrics);
+    }
+
+    private AsyncTokenManager<BearerAccessToken> build(ClientID clientID, Secret clientSecret, Scope scope,
+            List<URI> resources, ScheduledExecutorService scheduler, boolean shutdownScheduler) {
+        ClientAuthenticator authenticator = newAuthenticator(clientID, clientSecret);
+        Supplier<URI> providerTokenEndpoint = tokenEndpoint();
+        OpenIDProvider<BearerAccessToken, RefreshToken> provider =
+                newProvider(providerTokenEndpoint, clientID, authenticator, scope, resources);
+        if (!additionalTokenEndpoints.isEmpty()) {
+            List<OpenIDProviderImpl> providers = new ArrayList<>();
+            providers.add((OpenIDProviderImpl) provider);
+            for (URI tokenEndpoint : additionalTokenEndpoints) {
+                providers.add(newProvider(() -> tokenEndpoint, clientID, authenticator, scope, resources));
+            }
+            provider = new HedgingOpenIDProvider<>(providers, hedgeDelay, TimeUnit.MILLISECONDS).metrics(metrics);
+        }
+
+        TokenManagerImpl<BearerAccessToken, RefreshToken> tokenManager =
+                new TokenManagerImpl<>(provider, expireThreshold).metrics(metrics).resilience(resilience).clock(clock)
+                        .minForcedRefreshInterval(minForcedRefreshInterval, TimeUnit.MILLISECONDS)
+                        .fallbackPolicy(fallbackPolicy)
+                        .expireThreshold(adaptiveExpireThreshold)
+                        .deadline(deadline >= 0 ? deadline : 2L * (connectTimeout + readTimeout), TimeUnit.MILLISECONDS);
+        if (rateLimiter != null) {
+            tokenManager.rateLimiter(rateLimiter);
+        } else if (rateLimit > 0) {
+            tokenManager.rateLimiter(TokenRequestLimiter.shared(providerTokenEndpoint.get(), rateLimit, rateLimitBurst));
+        }
+        for (TokenListener listener : tokenListeners) {
+            tokenManager.onTokenChanged(listener.listener, listener.executor);
+        }
+        if (tokenStores != null) {
+            tokenManager.tokenStore(tokenStores.apply(new TokenKey(clientID, scope,
+                    resources != null && !resources.isEmpty() ? resources.get(0) : null))).loadStoredTokens();
+        }
+
+        if (!backgroundRefresh) {
+            return tokenManager;
+        }
+        return new ScheduledTokenManager<>(tokenManager, scheduler, shutdownScheduler, refreshRatio, refreshJitter);
+    }
+
+    /**
+     * @return the token endpoint, from the issuer discovery document requested like the token requests if the builder
+     *         was created with an issuer
+     */
+    private Supplier<URI> tokenEndpoint() {
+        if (issuer == null) {
+            return providerTokenEndpoint;
+        }
+        return ProviderMetadataCache.shared(issuer, transport, connectTimeout, readTimeout)::getTokenEndpointURI;
+    }
+
+    private OpenIDProviderImpl newProvider(Supplier<URI> tokenEndpoint, ClientID clientID,
+            ClientAuthenticator authenticator, Scope scope, List<URI> resources) {
+        return new OpenIDProviderImpl(tokenEndpoint, clientID, authenticator, authorizationGrant, scope, resources,
+                connectTimeout, readTimeout, headers, transport, executor, metrics, streamingResponseParser,
+                defaultTokenLifetime, clockSkew);
+    }
+
+    private ClientAuthenticator newAuthenticator(ClientID clientID, Secret clientSecret) {
+        if (privateKey != null) {
+            return new ClientAssertions(clientID, claims -> new PrivateKeyJWT(privateKey instanceof RSAPrivateKey ?
+                    JWTAssertionFactory.create(claims, privateKeyAlgorithm, (RSAPrivateKey) privateKey, privateKeyID,
+                            null) :
+                    JWTAssertionFactory.create(claims, privateKeyAlgorithm, (ECPrivateKey) privateKey, privateKeyID,
+                            null)), clientAssertionLifetime, reuseClientAssertions, executor,
+                    nextTokenRequest());
+        }
+        if (tlsSocketFactory != null) {
+            return ClientAuthenticator.of(new PKITLSClientAuthentication(clientID, tlsSocketFactory));
+        }
+        if (clientSecret == null) {
+            return ClientAuthenticator.NONE;
+        }
+        if (clientSecretJWT) {
+            return new ClientAssertions(clientID,
+                    claims -> new ClientSecretJWT(JWTAssertionFactory.create(claims, JWSAlgorithm.HS256, clientSecret)),
+                    clientAssertionLifetime, reuseClientAssertions, executor, nextTokenRequest());
+        }
+        return ClientAuthenticator.of(new ClientSecretBasic(clientID, clientSecret));
+    }
+
+    /**
+     * @return milliseconds from receiving tokens with a lifetime to the request that renews them, at the earliest
+     */
+    private LongUnaryOperator nextTokenRequest() {
+        AdaptiveExpireThreshold adaptiveThreshold = adaptiveExpireThreshold;
+        int threshold = expireThreshold;
+        double ratio = backgroundRefresh ? refreshRatio * (1 - refreshJitter) : 1;
+        return expiresIn -> {
+            long next = expiresIn - (adaptiveThreshold != null ? adaptiveThreshold.getThreshold(expiresIn) : threshold);
+            return Math.min(next, (long) (expiresIn * ratio));
+        };
+    }
+
+    /**
+     * @return file name unique to the token key, that doesn't reveal it
+     */
+    private static String fileName(TokenKey key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(key.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder name = new StringBuilder("oidc-tokens-");
+        for (int i = 0; i < 16; i++) {
+            name.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return name.append(".bin").toString();
+    }
+
+    private static final class TokenListener {
+        private final Consumer<Tokens<BearerAccessToken, RefreshToken>> listener;
+
+        private final Executor executor;
+
+        private TokenListener(Consumer<Tokens<BearerAccessToken, RefreshToken>> listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
 
-        return new TokenManagerImpl<>(provider, expireThreshold);
+    private static ScheduledExecutorService newRefreshScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oidc-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 }
@@ -0,0 +1,46 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.RefreshToken;
+import com.premiumminds.oidc.TokenCodec;
+
+/**
+ * Codecs of the Nimbus tokens, to keep them in a {@link com.premiumminds.oidc.TokenStore}.
+ * <p>
+ * Only the token values are kept, the token store already keeps when they expire.
+ */
+public final class NimbusTokenCodecs {
+
+    /**
+     * Bearer access token codec
+     */
+    public static final TokenCodec<BearerAccessToken> ACCESS_TOKEN = new TokenCodec<BearerAccessToken>() {
+        @Override
+        public String encode(BearerAccessToken token) {
+            return token.getValue();
+        }
+
+        @Override
+        public BearerAccessToken decode(String value) {
+            return new BearerAccessToken(value);
+        }
+    };
+
+    /**
+     * Refresh token codec
+     */
+    public static final TokenCodec<RefreshToken> REFRESH_TOKEN = new TokenCodec<RefreshToken>() {
+        @Override
+        public String encode(RefreshToken token) {
+            return token.getValue();
+        }
+
+        @Override
+        public RefreshToken decode(String value) {
+            return new RefreshToken(value);
+        }
+    };
+
+    private NimbusTokenCodecs() {
+    }
+}
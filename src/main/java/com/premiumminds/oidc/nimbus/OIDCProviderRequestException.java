@@ -1,12 +1,23 @@
 package com.premiumminds.oidc.nimbus;
 
-public class OIDCProviderRequestException extends RuntimeException {
+import com.premiumminds.oidc.ProviderErrorKind;
+import com.premiumminds.oidc.ProviderRequestException;
+
+public class OIDCProviderRequestException extends ProviderRequestException {
 
     public OIDCProviderRequestException(String message) {
-        super(message);
+        super(ProviderErrorKind.OTHER, message);
     }
 
     public OIDCProviderRequestException(String message, Throwable cause) {
-        super(message, cause);
+        super(ProviderErrorKind.OTHER, message, cause);
+    }
+
+    public OIDCProviderRequestException(ProviderErrorKind kind, String message) {
+        super(kind, message);
+    }
+
+    public OIDCProviderRequestException(ProviderErrorKind kind, String message, Throwable cause) {
+        super(kind, message, cause);
     }
 }
@@ -1,15 +1,17 @@
 package com.premiumminds.oidc.nimbus;
 
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
 import com.nimbusds.oauth2.sdk.AuthorizationGrant;
 import com.nimbusds.oauth2.sdk.ErrorObject;
+import com.nimbusds.oauth2.sdk.OAuth2Error;
 import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.RefreshTokenGrant;
 import com.nimbusds.oauth2.sdk.Scope;
 import com.nimbusds.oauth2.sdk.TokenErrorResponse;
 import com.nimbusds.oauth2.sdk.TokenRequest;
 import com.nimbusds.oauth2.sdk.TokenResponse;
-import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
-import com.nimbusds.oauth2.sdk.auth.Secret;
+import com.nimbusds.oauth2.sdk.auth.ClientAuthentication;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
 import com.nimbusds.oauth2.sdk.http.HTTPResponse;
 import com.nimbusds.oauth2.sdk.id.ClientID;
@@ -17,42 +19,79 @@ import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
 import com.nimbusds.oauth2.sdk.token.RefreshToken;
 import com.nimbusds.openid.connect.sdk.OIDCTokenResponse;
 import com.nimbusds.openid.connect.sdk.OIDCTokenResponseParser;
+import com.premiumminds.oidc.AsyncOpenIDProvider;
 import com.premiumminds.oidc.OpenIDProvider;
+import com.premiumminds.oidc.ProviderErrorKind;
+import com.premiumminds.oidc.TokenEvents;
+import com.premiumminds.oidc.TokenMetrics;
 import com.premiumminds.oidc.Tokens;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.net.UnknownHostException;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
-class OpenIDProviderImpl implements OpenIDProvider<BearerAccessToken, RefreshToken> {
+class OpenIDProviderImpl
+        implements OpenIDProvider<BearerAccessToken, RefreshToken>, AsyncOpenIDProvider<BearerAccessToken, RefreshToken> {
+    private static final TokenEvents EVENTS = TokenEvents.get();
+
     private final Supplier<URI> tokenEndpoint;
 
     private final ClientID clientID;
 
-    private final Secret clientSecret;
+    private final ClientAuthenticator authenticator;
 
     private final AuthorizationGrant authorizationGrant;
 
     private final Scope scope;
 
+    private final List<URI> resources;
+
     private final int connectTimeout;
 
     private final int readTimeout;
 
     private final Map<String, List<String>> headers;
 
-    public OpenIDProviderImpl(Supplier<URI> tokenEndpoint, ClientID clientID, Secret clientSecret,
-            AuthorizationGrant authorizationGrant, Scope scope, int connectTimeout, int readTimeout, Map<String, List<String>> headers) {
+    private final TokenEndpointTransport transport;
+
+    private final Executor executor;
+
+    private final TokenMetrics metrics;
+
+    private final boolean streamingParser;
+
+    private final long defaultExpiresIn;
+
+    private final long clockSkew;
+
+    public OpenIDProviderImpl(Supplier<URI> tokenEndpoint, ClientID clientID, ClientAuthenticator authenticator,
+            AuthorizationGrant authorizationGrant, Scope scope, List<URI> resources, int connectTimeout, int readTimeout,
+            Map<String, List<String>> headers, TokenEndpointTransport transport, Executor executor,
+            TokenMetrics metrics, boolean streamingParser, long defaultExpiresIn, long clockSkew) {
         this.tokenEndpoint = tokenEndpoint;
         this.clientID = clientID;
-        this.clientSecret = clientSecret;
+        this.authenticator = authenticator;
         this.authorizationGrant = authorizationGrant;
         this.scope = scope;
+        this.resources = resources;
         this.connectTimeout = connectTimeout;
         this.readTimeout = readTimeout;
         this.headers = headers;
+        this.transport = transport;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.streamingParser = streamingParser;
+        this.defaultExpiresIn = defaultExpiresIn;
+        this.clockSkew = clockSkew;
     }
 
     @Override
@@ -65,13 +104,100 @@ class OpenIDProviderImpl implements OpenIDProvider<BearerAccessToken, RefreshTok
         return tokenRequest(authorizationGrant);
     }
 
+    @Override
+    public CompletableFuture<Tokens<BearerAccessToken, RefreshToken>> refreshTokenAsync(RefreshToken refreshToken) {
+        return tokenRequestAsync(new RefreshTokenGrant(refreshToken));
+    }
+
+    @Override
+    public CompletableFuture<Tokens<BearerAccessToken, RefreshToken>> grantTokenAsync() {
+        return tokenRequestAsync(authorizationGrant);
+    }
+
+    /**
+     * Exchange a subject token for an access token of the audience (RFC 8693)
+     */
+    Tokens<BearerAccessToken, RefreshToken> exchangeToken(String subjectToken, String subjectTokenType,
+            String audience) {
+        return tokenRequest(new TokenExchangeGrant(subjectToken, subjectTokenType, audience));
+    }
+
+    CompletableFuture<Tokens<BearerAccessToken, RefreshToken>> exchangeTokenAsync(String subjectToken,
+            String subjectTokenType, String audience) {
+        return tokenRequestAsync(new TokenExchangeGrant(subjectToken, subjectTokenType, audience));
+    }
+
     private Tokens<BearerAccessToken, RefreshToken> tokenRequest(AuthorizationGrant authzGrant) {
+        HTTPRequest httpRequest = toHTTPRequest(authzGrant);
+        TokenEvents.Span event = EVENTS.endpointRequest(httpRequest.getURI(), authzGrant.getType().getValue());
+        try {
+            HTTPResponse httpResponse;
+            long start = System.nanoTime();
+            try {
+                httpResponse = transport.send(httpRequest);
+            } catch (IOException e) {
+                throw new OIDCProviderRequestException(kind(e), "connection problem", e);
+            } finally {
+                metrics.providerRequest(System.nanoTime() - start);
+            }
+            Tokens<BearerAccessToken, RefreshToken> tokens = toTokens(httpResponse);
+            prepareNextRequest(httpRequest, authzGrant, tokens);
+            event.end(null);
+            return tokens;
+        } catch (RuntimeException e) {
+            event.end(e);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Tokens<BearerAccessToken, RefreshToken>> tokenRequestAsync(
+            AuthorizationGrant authzGrant) {
+        HTTPRequest httpRequest = toHTTPRequest(authzGrant);
+        TokenEvents.Span event = EVENTS.endpointRequest(httpRequest.getURI(), authzGrant.getType().getValue());
+        long start = System.nanoTime();
+        return transport.sendAsync(httpRequest, executor).handle((httpResponse, e) -> {
+            metrics.providerRequest(System.nanoTime() - start);
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof UncheckedIOException) {
+                    cause = cause.getCause();
+                }
+                OIDCProviderRequestException failure =
+                        new OIDCProviderRequestException(kind(cause), "connection problem", cause);
+                event.end(failure);
+                throw failure;
+            }
+            try {
+                Tokens<BearerAccessToken, RefreshToken> tokens = toTokens(httpResponse);
+                prepareNextRequest(httpRequest, authzGrant, tokens);
+                event.end(null);
+                return tokens;
+            } catch (RuntimeException parseFailure) {
+                event.end(parseFailure);
+                throw parseFailure;
+            }
+        });
+    }
+
+    /**
+     * Let the client authentication get ready for the request that will renew the tokens. Exchanged tokens are not
+     * renewed by another request of this client.
+     */
+    private void prepareNextRequest(HTTPRequest httpRequest, AuthorizationGrant authzGrant,
+            Tokens<BearerAccessToken, RefreshToken> tokens) {
+        if (!(authzGrant instanceof TokenExchangeGrant)) {
+            authenticator.prepare(httpRequest.getURI(), tokens.getExpiresIn());
+        }
+    }
+
+    private HTTPRequest toHTTPRequest(AuthorizationGrant authzGrant) {
+        URI endpoint = tokenEndpoint.get();
+        ClientAuthentication authentication = authenticator.authenticate(endpoint);
         TokenRequest request;
-        if (clientSecret != null) {
-            request = new TokenRequest(tokenEndpoint.get(), new ClientSecretBasic(clientID, clientSecret), authzGrant,
-                    scope);
+        if (authentication != null) {
+            request = new TokenRequest(endpoint, authentication, authzGrant, scope, resources, null);
         } else {
-            request = new TokenRequest(tokenEndpoint.get(), clientID, authzGrant, scope);
+            request = new TokenRequest(endpoint, clientID, authzGrant, scope, resources, null, null);
         }
 
         HTTPRequest httpRequest = request.toHTTPRequest();
@@ -81,23 +207,33 @@ class OpenIDProviderImpl implements OpenIDProvider<BearerAccessToken, RefreshTok
         if (headers != null) {
             headers.forEach((key, value) -> httpRequest.setHeader(key, value.toArray(new String[0])));
         }
+        return httpRequest;
+    }
 
-        HTTPResponse httpResponse;
-        try {
-            httpResponse = httpRequest.send();
-        } catch (IOException e) {
-            throw new OIDCProviderRequestException("connection problem", e);
+    private Tokens<BearerAccessToken, RefreshToken> toTokens(HTTPResponse httpResponse) {
+        if (streamingParser) {
+            Tokens<BearerAccessToken, RefreshToken> tokens = TokenResponseReader.read(httpResponse, this::expiresIn);
+            if (tokens != null) {
+                return tokens;
+            }
+            // error responses and anything unusual
         }
+
         TokenResponse tokenResponse;
         try {
             tokenResponse = OIDCTokenResponseParser.parse(httpResponse);
         } catch (ParseException e) {
-            throw new OIDCProviderRequestException("response parse problem", e);
+            if (httpResponse.getStatusCode() >= 500) {
+                // gateways answer 5xx with bodies that are not token error responses
+                throw new OIDCProviderRequestException(ProviderErrorKind.SERVER_ERROR,
+                        "provider error - HTTP " + httpResponse.getStatusCode(), e);
+            }
+            throw new OIDCProviderRequestException(ProviderErrorKind.PARSE, "response parse problem", e);
         }
 
         if (tokenResponse instanceof TokenErrorResponse) {
             ErrorObject error = ((TokenErrorResponse) tokenResponse).getErrorObject();
-            throw new OIDCProviderRequestException(
+            throw new OIDCProviderRequestException(kind(error, httpResponse.getStatusCode()),
                     "provider error - " + error.getCode() + ": " + error.getDescription());
         }
 
@@ -105,7 +241,81 @@ class OpenIDProviderImpl implements OpenIDProvider<BearerAccessToken, RefreshTok
         com.nimbusds.oauth2.sdk.token.Tokens tokens = oidcTokenResponse.getTokens();
 
         return new Tokens<>(tokens.getBearerAccessToken(), tokens.getRefreshToken(),
-                tokens.getBearerAccessToken().getLifetime() * 1000);
+                expiresIn(tokens.getBearerAccessToken()));
+
+    }
+
+    private static ProviderErrorKind kind(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return ProviderErrorKind.TIMEOUT;
+            }
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException) {
+                return ProviderErrorKind.CONNECTION;
+            }
+        }
+        return ProviderErrorKind.CONNECTION_LOST;
+    }
+
+    static ProviderErrorKind kind(ErrorObject error, int statusCode) {
+        String code = error.getCode();
+        if (OAuth2Error.INVALID_GRANT.getCode().equals(code)) {
+            return ProviderErrorKind.INVALID_GRANT;
+        }
+        if (OAuth2Error.INVALID_CLIENT.getCode().equals(code) || OAuth2Error.UNAUTHORIZED_CLIENT.getCode().equals(code)) {
+            return ProviderErrorKind.INVALID_CLIENT;
+        }
+        if (statusCode >= 500 || OAuth2Error.SERVER_ERROR.getCode().equals(code)
+                || OAuth2Error.TEMPORARILY_UNAVAILABLE.getCode().equals(code)) {
+            return ProviderErrorKind.SERVER_ERROR;
+        }
+        return ProviderErrorKind.OTHER;
+    }
+
+    /**
+     * Lifetime of an access token just received
+     */
+    private long expiresIn(BearerAccessToken accessToken) {
+        return expiresIn(accessToken, System.currentTimeMillis(), clockSkew, defaultExpiresIn);
+    }
 
+    /**
+     * Lifetime of the access token in milliseconds. When the response has no {@code expires_in}, it comes from the
+     * {@code exp} and {@code iat} claims of a JWT access token: both are set by the provider clock, so their
+     * difference is not affected by the skew between the clocks. Without {@code iat}, {@code exp} can only be
+     * compared with our clock, so the lifetime is counted from when the response was received, less the clock skew
+     * allowed. Opaque access tokens, and JWTs without {@code exp}, get the default lifetime.
+     *
+     * @param accessToken
+     *         access token
+     * @param receivedAt
+     *         wall clock time the response was received, in milliseconds
+     * @param clockSkew
+     *         maximum difference between our clock and the provider one, in milliseconds
+     * @param defaultExpiresIn
+     *         lifetime of access tokens without a known one, in milliseconds
+     * @return lifetime in milliseconds
+     */
+    static long expiresIn(BearerAccessToken accessToken, long receivedAt, long clockSkew, long defaultExpiresIn) {
+        if (accessToken.getLifetime() > 0) {
+            return accessToken.getLifetime() * 1000;
+        }
+
+        JWTClaimsSet claims;
+        try {
+            claims = JWTParser.parse(accessToken.getValue()).getJWTClaimsSet();
+        } catch (java.text.ParseException e) {
+            // opaque access token
+            return defaultExpiresIn;
+        }
+        if (claims == null || claims.getExpirationTime() == null) {
+            return defaultExpiresIn;
+        }
+        long expiresAt = claims.getExpirationTime().getTime();
+        if (claims.getIssueTime() == null) {
+            return Math.max(expiresAt - receivedAt - clockSkew, 0);
+        }
+        return Math.max(expiresAt - claims.getIssueTime().getTime(), 0);
     }
 }
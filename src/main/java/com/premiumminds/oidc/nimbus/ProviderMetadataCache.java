@@ -0,0 +1,284 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.oauth2.sdk.http.HTTPRequest;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import com.nimbusds.oauth2.sdk.id.Issuer;
+import com.nimbusds.openid.connect.sdk.op.OIDCProviderConfigurationRequest;
+import com.nimbusds.openid.connect.sdk.op.OIDCProviderMetadata;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * OpenID provider metadata from the issuer discovery document ({@code .well-known/openid-configuration}).
+ * <p>
+ * The document is loaded on first use and renewed in background when the {@code Cache-Control} max age of the
+ * response says so (between 1 minute and 1 day, 1 hour if the response has none). If renewing fails, the last good
+ * metadata keeps being served and the load is retried with exponential backoff.
+ */
+public class ProviderMetadataCache {
+    private static final long DEFAULT_MAX_AGE = 3600000; // 1 hour
+
+    private static final long MIN_MAX_AGE = 60000; // 1 minute
+
+    private static final long MAX_MAX_AGE = 86400000; // 1 day
+
+    private static final long MIN_RETRY_DELAY = 10000; // 10 seconds
+
+    private static final int TIMEOUT = 5000; // 5 seconds
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*\"?(\\d+)");
+
+    private static final ConcurrentHashMap<Key, ProviderMetadataCache> SHARED = new ConcurrentHashMap<>();
+
+    private final Issuer issuer;
+
+    private final TokenEndpointTransport transport;
+
+    private final int connectTimeout;
+
+    private final int readTimeout;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    private volatile OIDCProviderMetadata metadata;
+
+    private long retryDelay = MIN_RETRY_DELAY;
+
+    /**
+     * Create a new metadata cache
+     *
+     * @param issuer
+     *         issuer of the OpenID provider
+     * @param transport
+     *         transport to request the discovery document
+     * @param scheduler
+     *         scheduler to renew the metadata in background
+     */
+    public ProviderMetadataCache(Issuer issuer, TokenEndpointTransport transport,
+            ScheduledExecutorService scheduler) {
+        this(issuer, transport, TIMEOUT, TIMEOUT, scheduler);
+    }
+
+    /**
+     * Create a new metadata cache
+     *
+     * @param issuer
+     *         issuer of the OpenID provider
+     * @param transport
+     *         transport to request the discovery document
+     * @param connectTimeout
+     *         connect timeout in milliseconds
+     * @param readTimeout
+     *         read timeout in milliseconds
+     * @param scheduler
+     *         scheduler to renew the metadata in background
+     */
+    public ProviderMetadataCache(Issuer issuer, TokenEndpointTransport transport, int connectTimeout,
+            int readTimeout, ScheduledExecutorService scheduler) {
+        this.issuer = issuer;
+        this.transport = transport;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Get the metadata cache of the issuer shared by the whole JVM, renewed by a daemon thread, requesting the
+     * discovery document with the default transport.
+     *
+     * @param issuer
+     *         issuer of the OpenID provider
+     * @return the shared metadata cache
+     */
+    public static ProviderMetadataCache shared(Issuer issuer) {
+        return shared(issuer, HttpURLConnectionTransport.DEFAULT, TIMEOUT, TIMEOUT);
+    }
+
+    /**
+     * Get the metadata cache of the issuer shared by the whole JVM, renewed by a daemon thread. There is one cache for
+     * each issuer, transport and timeouts, so the discovery document goes through the same HTTP stack as the token
+     * requests.
+     *
+     * @param issuer
+     *         issuer of the OpenID provider
+     * @param transport
+     *         transport to request the discovery document
+     * @param connectTimeout
+     *         connect timeout in milliseconds
+     * @param readTimeout
+     *         read timeout in milliseconds
+     * @return the shared metadata cache
+     */
+    public static ProviderMetadataCache shared(Issuer issuer, TokenEndpointTransport transport, int connectTimeout,
+            int readTimeout) {
+        return SHARED.computeIfAbsent(new Key(issuer, transport, connectTimeout, readTimeout),
+                key -> new ProviderMetadataCache(issuer, transport, connectTimeout, readTimeout,
+                        SharedScheduler.INSTANCE));
+    }
+
+    /**
+     * Get the provider metadata. Only the first call, or calls after the first load failed, have blocking IO.
+     *
+     * @return provider metadata
+     * @throws OIDCProviderRequestException
+     *         if the metadata was never loaded and loading it fails
+     */
+    public OIDCProviderMetadata getMetadata() {
+        OIDCProviderMetadata current = metadata;
+        if (current != null) {
+            return current;
+        }
+        loadLock.lock();
+        try {
+            if (metadata == null) {
+                schedule(load());
+            }
+            return metadata;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Get the token endpoint of the provider
+     *
+     * @return token endpoint
+     * @throws OIDCProviderRequestException
+     *         if the metadata was never loaded and loading it fails
+     */
+    public URI getTokenEndpointURI() {
+        return getMetadata().getTokenEndpointURI();
+    }
+
+    /**
+     * Load the discovery document, replacing the metadata on success
+     *
+     * @return milliseconds until the metadata should be renewed
+     */
+    long load() {
+        HTTPRequest request = new OIDCProviderConfigurationRequest(issuer).toHTTPRequest();
+        request.setConnectTimeout(connectTimeout);
+        request.setReadTimeout(readTimeout);
+
+        HTTPResponse response;
+        try {
+            response = transport.send(request);
+        } catch (IOException e) {
+            throw new OIDCProviderRequestException("connection problem", e);
+        }
+        if (!response.indicatesSuccess()) {
+            throw new OIDCProviderRequestException("discovery error - status " + response.getStatusCode());
+        }
+
+        OIDCProviderMetadata loaded;
+        try {
+            loaded = OIDCProviderMetadata.parse(response.getContentAsJSONObject());
+        } catch (ParseException e) {
+            throw new OIDCProviderRequestException("response parse problem", e);
+        }
+        if (!issuer.equals(loaded.getIssuer())) {
+            throw new OIDCProviderRequestException("discovery error - unexpected issuer " + loaded.getIssuer());
+        }
+        metadata = loaded;
+        return maxAge(response.getHeaderValue("Cache-Control"));
+    }
+
+    private void refresh() {
+        long delay;
+        try {
+            delay = load();
+            retryDelay = MIN_RETRY_DELAY;
+        } catch (RuntimeException e) {
+            // keep serving the last good metadata
+            delay = retryDelay;
+            retryDelay = Math.min(retryDelay * 2, DEFAULT_MAX_AGE);
+        }
+        schedule(delay);
+    }
+
+    private void schedule(long delay) {
+        try {
+            scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // scheduler is shutdown, the current metadata is kept as is
+        }
+    }
+
+    static long maxAge(String cacheControl) {
+        if (cacheControl == null) {
+            return DEFAULT_MAX_AGE;
+        }
+        if (cacheControl.contains("no-cache") || cacheControl.contains("no-store")) {
+            return MIN_MAX_AGE;
+        }
+        Matcher matcher = MAX_AGE.matcher(cacheControl);
+        if (!matcher.find()) {
+            return DEFAULT_MAX_AGE;
+        }
+        long maxAge;
+        try {
+            maxAge = TimeUnit.SECONDS.toMillis(Long.parseLong(matcher.group(1)));
+        } catch (NumberFormatException e) {
+            return MAX_MAX_AGE;
+        }
+        return Math.min(Math.max(maxAge, MIN_MAX_AGE), MAX_MAX_AGE);
+    }
+
+    private static final class Key {
+        private final Issuer issuer;
+
+        private final TokenEndpointTransport transport;
+
+        private final int connectTimeout;
+
+        private final int readTimeout;
+
+        private Key(Issuer issuer, TokenEndpointTransport transport, int connectTimeout, int readTimeout) {
+            this.issuer = issuer;
+            this.transport = transport;
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return issuer.equals(key.issuer) && transport.equals(key.transport)
+                    && connectTimeout == key.connectTimeout && readTimeout == key.readTimeout;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(issuer, transport, connectTimeout, readTimeout);
+        }
+    }
+
+    /**
+     * Scheduler of the shared caches, created on first use
+     */
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "oidc-metadata-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.http.HTTPRequest;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Sends the requests to the token endpoint.
+ * <p>
+ * Implementations must be thread safe, so the same transport can be shared by many token managers. On Java 11 or
+ * later, {@code JavaHttpClientTransport} keeps the connections to the token endpoint alive between requests.
+ *
+ * @see HttpURLConnectionTransport
+ */
+public interface TokenEndpointTransport {
+    /**
+     * Send the request and wait for the response
+     *
+     * @param request
+     *         token endpoint request, including the connect and read timeouts
+     * @return the response
+     * @throws IOException
+     *         if the request could not be sent or the response could not be read, a
+     *         {@link java.net.SocketTimeoutException} if it timed out
+     */
+    HTTPResponse send(HTTPRequest request) throws IOException;
+
+    /**
+     * Send the request without blocking the caller. The default implementation runs {@link #send(HTTPRequest)} in
+     * the executor, completing the future with an {@link UncheckedIOException} on failure.
+     *
+     * @param request
+     *         token endpoint request, including the connect and read timeouts
+     * @param executor
+     *         executor for transports that can only block
+     * @return future completed with the response
+     */
+    default CompletableFuture<HTTPResponse> sendAsync(HTTPRequest request, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(request);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,44 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.AuthorizationGrant;
+import com.nimbusds.oauth2.sdk.GrantType;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OAuth 2.0 token exchange grant (RFC 8693), exchanging a subject token for an access token to call another service on
+ * behalf of the subject. Not in the Nimbus SDK version this library builds with.
+ */
+final class TokenExchangeGrant extends AuthorizationGrant {
+    static final GrantType GRANT_TYPE = new GrantType("urn:ietf:params:oauth:grant-type:token-exchange");
+
+    static final String ACCESS_TOKEN_TYPE = "urn:ietf:params:oauth:token-type:access_token";
+
+    private final String subjectToken;
+
+    private final String subjectTokenType;
+
+    private final String audience;
+
+    TokenExchangeGrant(String subjectToken, String subjectTokenType, String audience) {
+        super(GRANT_TYPE);
+        this.subjectToken = subjectToken;
+        this.subjectTokenType = subjectTokenType;
+        this.audience = audience;
+    }
+
+    @Override
+    public Map<String, List<String>> toParameters() {
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        parameters.put("grant_type", Collections.singletonList(GRANT_TYPE.getValue()));
+        parameters.put("subject_token", Collections.singletonList(subjectToken));
+        parameters.put("subject_token_type", Collections.singletonList(subjectTokenType));
+        parameters.put("requested_token_type", Collections.singletonList(ACCESS_TOKEN_TYPE));
+        if (audience != null) {
+            parameters.put("audience", Collections.singletonList(audience));
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,239 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.RefreshToken;
+import com.premiumminds.oidc.TokenClock;
+import com.premiumminds.oidc.TokenMetrics;
+import com.premiumminds.oidc.Tokens;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exchanges the tokens of the callers of a service for access tokens to call other services on their behalf, with the
+ * OAuth 2.0 token exchange grant (RFC 8693).
+ * <p>
+ * The exchanged access tokens are cached until they are about to expire, keyed by the SHA-256 hash of the subject
+ * token, never kept itself, and the audience, so repeated calls for the same subject don't go to the token endpoint.
+ * Only one exchange is in flight for each key. The cache holds at most {@code maximumSize} access tokens: when it
+ * grows beyond that, the expired ones are evicted, then the ones expiring soonest. Access tokens without a known
+ * lifetime are not cached.
+ *
+ * @see NimbusOIDCTokenManagerBuilder#buildTokenExchange(int)
+ */
+public class TokenExchangeManager {
+    /**
+     * Fraction of the maximum size evicted at once, so a full cache is not sorted on every exchange
+     */
+    private static final double EVICTION_SLACK = 0.1;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final OpenIDProviderImpl provider;
+
+    private final String subjectTokenType;
+
+    private final int expireThreshold;
+
+    private final int maximumSize;
+
+    private final TokenClock clock;
+
+    private final TokenMetrics metrics;
+
+    TokenExchangeManager(OpenIDProviderImpl provider, String subjectTokenType, int expireThreshold, int maximumSize,
+            TokenClock clock, TokenMetrics metrics) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximum size must be positive");
+        }
+        this.provider = provider;
+        this.subjectTokenType = subjectTokenType;
+        this.expireThreshold = expireThreshold;
+        this.maximumSize = maximumSize;
+        this.clock = clock;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Exchange the subject token for an access token of the audience. This method can have blocking IO.
+     *
+     * @param subjectToken
+     *         token of the subject, usually the access token the caller of this service sent
+     * @param audience
+     *         service the access token is for, or null for the provider default
+     * @return access token for the audience
+     */
+    public BearerAccessToken exchange(String subjectToken, String audience) {
+        CompletableFuture<BearerAccessToken> accessToken = exchangeAsync(subjectToken, audience);
+        try {
+            return accessToken.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Exchange the subject token for an access token of the audience without blocking the caller.
+     *
+     * @param subjectToken
+     *         token of the subject, usually the access token the caller of this service sent
+     * @param audience
+     *         service the access token is for, or null for the provider default
+     * @return future completed with the access token for the audience
+     */
+    public CompletableFuture<BearerAccessToken> exchangeAsync(String subjectToken, String audience) {
+        Key key = new Key(hash(subjectToken), audience);
+        long now = clock.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.valid(now)) {
+            metrics.cacheHit();
+            return entry.accessToken;
+        }
+
+        Entry mine = new Entry();
+        Entry current = entries.compute(key, (k, old) -> old != null && (old.pending() || old.valid(now)) ? old : mine);
+        if (current != mine) {
+            // exchanged or being exchanged by someone else since we looked
+            return current.accessToken;
+        }
+
+        metrics.exchange();
+        CompletableFuture<Tokens<BearerAccessToken, RefreshToken>> exchanged;
+        try {
+            exchanged = provider.exchangeTokenAsync(subjectToken, subjectTokenType, audience);
+        } catch (RuntimeException e) {
+            exchanged = new CompletableFuture<>();
+            exchanged.completeExceptionally(e);
+        }
+        exchanged.whenComplete((tokens, e) -> complete(key, mine, tokens, e));
+        evict(now);
+        return mine.accessToken;
+    }
+
+    /**
+     * Get the number of access tokens in the cache, including the ones being exchanged
+     *
+     * @return number of access tokens
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void complete(Key key, Entry entry, Tokens<BearerAccessToken, RefreshToken> tokens, Throwable e) {
+        if (e != null) {
+            Throwable failure = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            entries.remove(key, entry);
+            metrics.error(failure);
+            entry.accessToken.completeExceptionally(failure);
+            return;
+        }
+        if (tokens.getExpiresIn() < 0) {
+            entry.validity = clock.nanoTime();
+            entries.remove(key, entry);
+        } else {
+            entry.validity = clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(tokens.getExpiresIn() - expireThreshold);
+        }
+        entry.accessToken.complete(tokens.getAccessToken());
+    }
+
+    private void evict(long now) {
+        if (entries.size() <= maximumSize) {
+            return;
+        }
+        List<Map.Entry<Key, Entry>> candidates = new ArrayList<>();
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().pending()) {
+                continue;
+            }
+            if (!entry.getValue().valid(now)) {
+                entries.remove(entry.getKey(), entry.getValue());
+            } else {
+                candidates.add(entry);
+            }
+        }
+
+        int excess = entries.size() - maximumSize + (int) (maximumSize * EVICTION_SLACK);
+        if (entries.size() > maximumSize && excess > 0) {
+            // expiring soonest first
+            candidates.sort(Comparator.comparingLong(entry -> entry.getValue().validity - now));
+            for (int i = 0; i < excess && i < candidates.size(); i++) {
+                entries.remove(candidates.get(i).getKey(), candidates.get(i).getValue());
+            }
+        }
+    }
+
+    private static byte[] hash(String subjectToken) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return digest.digest(subjectToken.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Key {
+        private final byte[] subjectHash;
+
+        private final String audience;
+
+        private final int hashCode;
+
+        private Key(byte[] subjectHash, String audience) {
+            this.subjectHash = subjectHash;
+            this.audience = audience;
+            this.hashCode = 31 * Arrays.hashCode(subjectHash) + Objects.hashCode(audience);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Arrays.equals(subjectHash, key.subjectHash) && Objects.equals(audience, key.audience);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<BearerAccessToken> accessToken = new CompletableFuture<>();
+
+        /**
+         * When the access token should no longer be used, set before the access token future completes
+         */
+        private volatile long validity;
+
+        private boolean pending() {
+            return !accessToken.isDone();
+        }
+
+        private boolean valid(long now) {
+            return accessToken.isDone() && !accessToken.isCompletedExceptionally() && now - validity < 0;
+        }
+    }
+}
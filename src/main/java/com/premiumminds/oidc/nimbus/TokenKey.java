@@ -0,0 +1,101 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * Identity of an access token in a {@link com.premiumminds.oidc.TokenManagerRegistry}: the client, the scope and
+ * optionally the resource (RFC 8707) the token is requested for.
+ * <p>
+ * The hash code is computed once, so keys are cheap to look up when reused.
+ */
+public final class TokenKey {
+    private final ClientID clientID;
+
+    private final Scope scope;
+
+    private final URI resource;
+
+    private final int hashCode;
+
+    /**
+     * Create a new key
+     *
+     * @param clientID
+     *         client id
+     * @param scope
+     *         scope of the access token
+     */
+    public TokenKey(ClientID clientID, Scope scope) {
+        this(clientID, scope, null);
+    }
+
+    /**
+     * Create a new key
+     *
+     * @param clientID
+     *         client id
+     * @param scope
+     *         scope of the access token
+     * @param resource
+     *         resource the access token is requested for, or null
+     */
+    public TokenKey(ClientID clientID, Scope scope, URI resource) {
+        this.clientID = Objects.requireNonNull(clientID, "clientID");
+        this.scope = scope != null ? scope : new Scope();
+        this.resource = resource;
+        this.hashCode = Objects.hash(clientID, this.scope, resource);
+    }
+
+    /**
+     * Get the client id
+     *
+     * @return client id
+     */
+    public ClientID getClientID() {
+        return clientID;
+    }
+
+    /**
+     * Get the scope
+     *
+     * @return scope of the access token
+     */
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Get the resource
+     *
+     * @return resource the access token is requested for, or null
+     */
+    public URI getResource() {
+        return resource;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TokenKey)) {
+            return false;
+        }
+        TokenKey other = (TokenKey) o;
+        return hashCode == other.hashCode && clientID.equals(other.clientID) && scope.equals(other.scope)
+                && Objects.equals(resource, other.resource);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenKey{clientID=" + clientID + ", scope=" + scope + ", resource=" + resource + '}';
+    }
+}
@@ -0,0 +1,315 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.common.contenttype.ContentType;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.RefreshToken;
+import com.premiumminds.oidc.Tokens;
+import java.util.function.ToLongFunction;
+
+/**
+ * Reads the tokens of a successful token endpoint response in a single pass over the JSON, keeping only
+ * {@code access_token}, {@code token_type}, {@code expires_in}, {@code refresh_token} and {@code scope}. Every other
+ * field, including the ID token, is skipped without being parsed or copied.
+ * <p>
+ * Anything else, like error responses, other token types or malformed JSON, is left to the Nimbus parser, which
+ * reports it properly.
+ */
+final class TokenResponseReader {
+    private final String json;
+
+    private int pos;
+
+    /**
+     * If the last string skipped has escape sequences
+     */
+    private boolean escaped;
+
+    private String accessToken;
+
+    private String tokenType;
+
+    private long lifetime;
+
+    private String refreshToken;
+
+    private String scope;
+
+    private TokenResponseReader(String json) {
+        this.json = json;
+    }
+
+    /**
+     * Read the tokens of the response
+     *
+     * @param httpResponse
+     *         token endpoint response
+     * @param expiresIn
+     *         lifetime in milliseconds of the access token
+     * @return the tokens, or null if the response must be parsed by Nimbus
+     */
+    static Tokens<BearerAccessToken, RefreshToken> read(HTTPResponse httpResponse,
+            ToLongFunction<BearerAccessToken> expiresIn) {
+        ContentType contentType = httpResponse.getEntityContentType();
+        if (httpResponse.getStatusCode() != HTTPResponse.SC_OK || httpResponse.getContent() == null
+                || contentType == null || !ContentType.APPLICATION_JSON.matches(contentType)) {
+            return null;
+        }
+        TokenResponseReader reader = new TokenResponseReader(httpResponse.getContent());
+        if (!reader.readObject() || reader.accessToken == null || !"Bearer".equalsIgnoreCase(reader.tokenType)) {
+            return null;
+        }
+
+        BearerAccessToken accessToken = new BearerAccessToken(reader.accessToken, reader.lifetime,
+                reader.scope != null ? Scope.parse(reader.scope) : null);
+        RefreshToken refreshToken = reader.refreshToken != null ? new RefreshToken(reader.refreshToken) : null;
+        return new Tokens<>(accessToken, refreshToken, expiresIn.applyAsLong(accessToken));
+    }
+
+    private boolean readObject() {
+        skipWhitespace();
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (consume('}')) {
+            return atEnd();
+        }
+        while (true) {
+            skipWhitespace();
+            if (!at('"')) {
+                return false;
+            }
+            int nameStart = pos + 1;
+            int nameEnd = skipString();
+            skipWhitespace();
+            if (nameEnd < 0 || !consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+            if (!readField(nameStart, nameEnd)) {
+                return false;
+            }
+            skipWhitespace();
+            if (consume('}')) {
+                return atEnd();
+            }
+            if (!consume(',')) {
+                return false;
+            }
+        }
+    }
+
+    private boolean readField(int nameStart, int nameEnd) {
+        if (isName(nameStart, nameEnd, "access_token")) {
+            accessToken = readString();
+            return accessToken != null;
+        }
+        if (isName(nameStart, nameEnd, "token_type")) {
+            tokenType = readString();
+            return tokenType != null;
+        }
+        if (isName(nameStart, nameEnd, "expires_in")) {
+            return readLifetime();
+        }
+        if (isName(nameStart, nameEnd, "refresh_token")) {
+            refreshToken = readString();
+            return refreshToken != null;
+        }
+        if (isName(nameStart, nameEnd, "scope")) {
+            scope = readString();
+            return scope != null;
+        }
+        return skipValue();
+    }
+
+    private boolean isName(int start, int end, String name) {
+        return end - start == name.length() && json.regionMatches(start, name, 0, name.length());
+    }
+
+    /**
+     * @return the string value, or null if the value is not a string
+     */
+    private String readString() {
+        if (!at('"')) {
+            return null;
+        }
+        int start = pos + 1;
+        int end = skipString();
+        if (end < 0) {
+            return null;
+        }
+        return escaped ? unescape(start, end) : json.substring(start, end);
+    }
+
+    /**
+     * Read {@code expires_in} in seconds, as a number or a string like Nimbus does
+     */
+    private boolean readLifetime() {
+        if (at('"')) {
+            String value = readString();
+            try {
+                lifetime = value != null ? Long.parseLong(value) : -1;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return lifetime >= 0;
+        }
+        long value = 0;
+        int start = pos;
+        while (pos < json.length() && json.charAt(pos) >= '0' && json.charAt(pos) <= '9') {
+            value = value * 10 + (json.charAt(pos) - '0');
+            pos++;
+        }
+        // fractions, exponents and absurd lifetimes are left to Nimbus
+        if (pos == start || pos - start > 18 || (pos < json.length() && isNumberPart(json.charAt(pos)))) {
+            return false;
+        }
+        lifetime = value;
+        return true;
+    }
+
+    private static boolean isNumberPart(char c) {
+        return c == '.' || c == 'e' || c == 'E' || c == '-' || c == '+';
+    }
+
+    /**
+     * Skip the string starting at the current position
+     *
+     * @return index of the closing quote, or -1 if the string is not closed
+     */
+    private int skipString() {
+        escaped = false;
+        for (int i = pos + 1; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                escaped = true;
+                i++;
+            } else if (c == '"') {
+                pos = i + 1;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String unescape(int start, int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = json.charAt(i);
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            c = json.charAt(++i);
+            switch (c) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 >= end) {
+                        return null;
+                    }
+                    int codePoint = 0;
+                    for (int j = i + 1; j <= i + 4; j++) {
+                        int digit = Character.digit(json.charAt(j), 16);
+                        if (digit < 0) {
+                            return null;
+                        }
+                        codePoint = codePoint * 16 + digit;
+                    }
+                    value.append((char) codePoint);
+                    i += 4;
+                    break;
+                default:
+                    // \" \\ \/
+                    value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Skip a value not needed: a string, an object or array (with everything inside), a number or a literal
+     */
+    private boolean skipValue() {
+        if (atEnd()) {
+            return false;
+        }
+        char c = json.charAt(pos);
+        if (c == '"') {
+            return skipString() >= 0;
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < json.length()) {
+                c = json.charAt(pos);
+                if (c == '"') {
+                    if (skipString() < 0) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        pos++;
+                        return true;
+                    }
+                }
+                pos++;
+            }
+            return false;
+        }
+        int start = pos;
+        while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+            pos++;
+        }
+        return pos > start;
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean at(char c) {
+        return pos < json.length() && json.charAt(pos) == c;
+    }
+
+    private boolean consume(char c) {
+        if (at(c)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return if only whitespace is left
+     */
+    private boolean atEnd() {
+        skipWhitespace();
+        return pos == json.length();
+    }
+}
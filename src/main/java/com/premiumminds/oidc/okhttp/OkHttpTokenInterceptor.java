@@ -0,0 +1,66 @@
+package com.premiumminds.oidc.okhttp;
+
+import com.premiumminds.oidc.AuthorizationHeaders;
+import java.io.IOException;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * OkHttp interceptor that adds the {@code Authorization} header with the access token to every request. If the
+ * server answers 401, the access token is discarded and the request is sent once more with a new one, unless its body
+ * can only be sent once.
+ * <p>
+ * To use this class, the project must include:
+ * <pre>
+ *      &lt;dependency&gt;
+ *          &lt;groupId&gt;com.squareup.okhttp3&lt;/groupId&gt;
+ *          &lt;artifactId&gt;okhttp&lt;/artifactId&gt;
+ *      &lt;/dependency&gt;
+ * </pre>
+ * Example:
+ * <pre>
+ *     OkHttpClient client = new OkHttpClient.Builder()
+ *          .addInterceptor(new OkHttpTokenInterceptor(
+ *                  new AuthorizationHeaders&lt;&gt;(tokenManager, BearerAccessToken::toAuthorizationHeader)))
+ *          .build();
+ * </pre>
+ */
+public class OkHttpTokenInterceptor implements Interceptor {
+    private static final int UNAUTHORIZED = 401;
+
+    private final AuthorizationHeaders<?> headers;
+
+    /**
+     * Create a new interceptor
+     *
+     * @param headers
+     *         authorization headers of the token manager
+     */
+    public OkHttpTokenInterceptor(AuthorizationHeaders<?> headers) {
+        this.headers = headers;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String header = headers.get();
+        Response response = chain.proceed(authorize(request, header));
+        if (response.code() != UNAUTHORIZED) {
+            return response;
+        }
+
+        RequestBody body = request.body();
+        if (body != null && body.isOneShot()) {
+            return response;
+        }
+        response.close();
+        headers.invalidate(header);
+        return chain.proceed(authorize(request, headers.get()));
+    }
+
+    private static Request authorize(Request request, String header) {
+        return request.newBuilder().header("Authorization", header).build();
+    }
+}
@@ -0,0 +1,149 @@
+package com.premiumminds.oidc.jdkhttp;
+
+import com.premiumminds.oidc.AuthorizationHeaders;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends requests with a {@code java.net.http.HttpClient}, adding the {@code Authorization} header with the access
+ * token. If the server answers 401, the access token is discarded and the request is sent once more with a new one,
+ * unless its body can't be sent twice. The body of the discarded 401 response is never handed to the caller's body
+ * handler.
+ * <p>
+ * The {@code HttpClient} has no interceptors, so the requests are sent through this class instead. Requires Java 11
+ * or later.
+ * <p>
+ * Example:
+ * <pre>
+ *     TokenHttpClient client = new TokenHttpClient(HttpClient.newHttpClient(),
+ *          new AuthorizationHeaders&lt;&gt;(tokenManager, BearerAccessToken::toAuthorizationHeader));
+ *     HttpResponse&lt;String&gt; response = client.send(request, HttpResponse.BodyHandlers.ofString());
+ * </pre>
+ */
+public class TokenHttpClient {
+    private static final int UNAUTHORIZED = 401;
+
+    /**
+     * Body publishers of the JDK that publish the same body every time they are subscribed: in-memory data, files and
+     * input stream suppliers. The JDK has no way to ask a body publisher, so any other one is sent only once.
+     */
+    private static final Set<String> REPLAYABLE_PUBLISHERS = new HashSet<>(Arrays.asList(
+            "jdk.internal.net.http.RequestPublishers$EmptyPublisher",
+            "jdk.internal.net.http.RequestPublishers$ByteArrayPublisher",
+            "jdk.internal.net.http.RequestPublishers$StringPublisher",
+            "jdk.internal.net.http.RequestPublishers$IterablePublisher",
+            "jdk.internal.net.http.RequestPublishers$FilePublisher",
+            "jdk.internal.net.http.RequestPublishers$InputStreamPublisher"));
+
+    private final HttpClient client;
+
+    private final AuthorizationHeaders<?> headers;
+
+    /**
+     * Create a new client
+     *
+     * @param client
+     *         HTTP client to send the requests
+     * @param headers
+     *         authorization headers of the token manager
+     */
+    public TokenHttpClient(HttpClient client, AuthorizationHeaders<?> headers) {
+        this.client = client;
+        this.headers = headers;
+    }
+
+    /**
+     * Send the request with the access token, blocking until the response is received
+     *
+     * @param request
+     *         request, without the Authorization header
+     * @param handler
+     *         response body handler
+     * @param <B>
+     *         response body type
+     * @return the response
+     * @throws IOException
+     *         if sending or receiving fails
+     * @throws InterruptedException
+     *         if interrupted
+     */
+    public <B> HttpResponse<B> send(HttpRequest request, HttpResponse.BodyHandler<B> handler)
+            throws IOException, InterruptedException {
+        String header = headers.get();
+        boolean replayable = replayable(request);
+        HttpResponse<B> response = client.send(authorize(request, header), firstAttempt(handler, replayable));
+        if (!replayable || response.statusCode() != UNAUTHORIZED) {
+            return response;
+        }
+        headers.invalidate(header);
+        return client.send(authorize(request, headers.get()), handler);
+    }
+
+    /**
+     * Send the request with the access token without blocking the caller
+     *
+     * @param request
+     *         request, without the Authorization header
+     * @param handler
+     *         response body handler
+     * @param <B>
+     *         response body type
+     * @return future completed with the response
+     */
+    public <B> CompletableFuture<HttpResponse<B>> sendAsync(HttpRequest request,
+            HttpResponse.BodyHandler<B> handler) {
+        boolean replayable = replayable(request);
+        return headers.getAsync().thenCompose(header -> client.sendAsync(authorize(request, header),
+                        firstAttempt(handler, replayable))
+                .thenCompose(response -> {
+                    if (!replayable || response.statusCode() != UNAUTHORIZED) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    headers.invalidate(header);
+                    return headers.getAsync()
+                            .thenCompose(newHeader -> client.sendAsync(authorize(request, newHeader), handler));
+                }));
+    }
+
+    /**
+     * Handler of the first attempt, discarding the body of a 401 response that is sent again, so an input stream or
+     * publisher body handler never holds the connection of a response the caller doesn't get
+     */
+    private static <B> HttpResponse.BodyHandler<B> firstAttempt(HttpResponse.BodyHandler<B> handler,
+            boolean replayable) {
+        if (!replayable) {
+            return handler;
+        }
+        return info -> info.statusCode() == UNAUTHORIZED ? HttpResponse.BodySubscribers.replacing(null)
+                : handler.apply(info);
+    }
+
+    private static boolean replayable(HttpRequest request) {
+        return request.bodyPublisher()
+                .map(publisher -> REPLAYABLE_PUBLISHERS.contains(publisher.getClass().getName()))
+                .orElse(true);
+    }
+
+    /**
+     * Copy of the request with the Authorization header, the only way to add a header to a built request on Java 11
+     */
+    private static HttpRequest authorize(HttpRequest request, String header) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.uri())
+                .method(request.method(), request.bodyPublisher().orElse(HttpRequest.BodyPublishers.noBody()))
+                .expectContinue(request.expectContinue());
+        request.timeout().ifPresent(builder::timeout);
+        request.version().ifPresent(builder::version);
+        request.headers().map().forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("Authorization")) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        return builder.header("Authorization", header).build();
+    }
+}
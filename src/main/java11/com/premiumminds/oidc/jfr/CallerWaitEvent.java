@@ -0,0 +1,25 @@
+package com.premiumminds.oidc.jfr;
+
+import com.premiumminds.oidc.TokenEvents;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.premiumminds.oidc.CallerWait")
+@Label("Token Caller Wait")
+@Category("OIDC Token Manager")
+@Description("Caller of getAccessToken() blocked waiting for new tokens")
+class CallerWaitEvent extends Event implements TokenEvents.Span {
+    @Label("Outcome")
+    @Description("success, or the kind of failure")
+    String outcome;
+
+    @Override
+    public void end(Throwable failure) {
+        end();
+        outcome = TokenEvents.outcome(failure);
+        commit();
+    }
+}
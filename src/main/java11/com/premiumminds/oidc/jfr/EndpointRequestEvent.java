@@ -0,0 +1,31 @@
+package com.premiumminds.oidc.jfr;
+
+import com.premiumminds.oidc.TokenEvents;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.premiumminds.oidc.EndpointRequest")
+@Label("Token Endpoint Request")
+@Category("OIDC Token Manager")
+@Description("HTTP request to the token endpoint")
+class EndpointRequestEvent extends Event implements TokenEvents.Span {
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Grant Type")
+    String grantType;
+
+    @Label("Outcome")
+    @Description("success, or the kind of failure")
+    String outcome;
+
+    @Override
+    public void end(Throwable failure) {
+        end();
+        outcome = TokenEvents.outcome(failure);
+        commit();
+    }
+}
@@ -0,0 +1,63 @@
+package com.premiumminds.oidc.jfr;
+
+import com.premiumminds.oidc.TokenEvents;
+import java.net.URI;
+
+/**
+ * Token events recorded by the JDK Flight Recorder. Loaded by {@link TokenEvents#get()} when the JVM has it.
+ * <p>
+ * The events are only created while enabled in the recording, so otherwise they cost a single check.
+ * <p>
+ * Requires Java 11 or later.
+ */
+public class FlightRecorderTokenEvents implements TokenEvents {
+    private static final TokenRequestEvent TOKEN_REQUEST = new TokenRequestEvent();
+
+    private static final EndpointRequestEvent ENDPOINT_REQUEST = new EndpointRequestEvent();
+
+    private static final CallerWaitEvent CALLER_WAIT = new CallerWaitEvent();
+
+    private static final RefreshFallbackEvent REFRESH_FALLBACK = new RefreshFallbackEvent();
+
+    @Override
+    public Span tokenRequest(boolean refresh) {
+        if (!TOKEN_REQUEST.isEnabled()) {
+            return Span.NOOP;
+        }
+        TokenRequestEvent event = new TokenRequestEvent();
+        event.refresh = refresh;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span endpointRequest(URI endpoint, String grantType) {
+        if (!ENDPOINT_REQUEST.isEnabled()) {
+            return Span.NOOP;
+        }
+        EndpointRequestEvent event = new EndpointRequestEvent();
+        event.endpoint = String.valueOf(endpoint);
+        event.grantType = grantType;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span callerWait() {
+        if (!CALLER_WAIT.isEnabled()) {
+            return Span.NOOP;
+        }
+        CallerWaitEvent event = new CallerWaitEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void refreshFallback(Throwable cause) {
+        if (REFRESH_FALLBACK.isEnabled()) {
+            RefreshFallbackEvent event = new RefreshFallbackEvent();
+            event.cause = TokenEvents.outcome(cause);
+            event.commit();
+        }
+    }
+}
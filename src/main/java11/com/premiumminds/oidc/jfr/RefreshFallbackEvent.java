@@ -0,0 +1,17 @@
+package com.premiumminds.oidc.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.premiumminds.oidc.RefreshFallback")
+@Label("Refresh Fallback")
+@Category("OIDC Token Manager")
+@Description("Refresh token request failed, new tokens requested with the authorization grant instead")
+class RefreshFallbackEvent extends Event {
+    @Label("Cause")
+    @Description("Kind of failure of the refresh token request")
+    String cause;
+}
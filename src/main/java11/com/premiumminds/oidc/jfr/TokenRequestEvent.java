@@ -0,0 +1,29 @@
+package com.premiumminds.oidc.jfr;
+
+import com.premiumminds.oidc.TokenEvents;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.premiumminds.oidc.TokenRequest")
+@Label("Token Request")
+@Category("OIDC Token Manager")
+@Description("Request for new tokens by a token manager, with the authorization grant or the refresh token")
+class TokenRequestEvent extends Event implements TokenEvents.Span {
+    @Label("Refresh")
+    @Description("If the request used the refresh token")
+    boolean refresh;
+
+    @Label("Outcome")
+    @Description("success, or the kind of failure")
+    String outcome;
+
+    @Override
+    public void end(Throwable failure) {
+        end();
+        outcome = TokenEvents.outcome(failure);
+        commit();
+    }
+}
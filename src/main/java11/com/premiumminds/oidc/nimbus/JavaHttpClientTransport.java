@@ -0,0 +1,151 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.http.HTTPRequest;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Transport using the {@link HttpClient} from Java 11. The client keeps the connections to the token endpoint alive
+ * between requests and negotiates HTTP/2 when the provider supports it, so most token requests don't pay the TCP and
+ * TLS handshakes.
+ * <p>
+ * Share the same transport between token managers talking to the same provider, so they share the connection pool.
+ * The connect timeout is the one of the {@link HttpClient}, the read timeout is the one of each request.
+ * <p>
+ * Requires Java 11 or later.
+ */
+public class JavaHttpClientTransport implements TokenEndpointTransport {
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(List.of("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+    }
+
+    private final HttpClient client;
+
+    /**
+     * Create a new transport with its own {@link HttpClient} and a 5 seconds connect timeout
+     */
+    public JavaHttpClientTransport() {
+        this(Duration.ofSeconds(5));
+    }
+
+    /**
+     * Create a new transport with its own {@link HttpClient}
+     *
+     * @param connectTimeout
+     *         connect timeout
+     */
+    public JavaHttpClientTransport(Duration connectTimeout) {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(connectTimeout)
+                .build());
+    }
+
+    /**
+     * Create a new transport on top of an existing {@link HttpClient}
+     *
+     * @param client
+     *         http client
+     */
+    public JavaHttpClientTransport(HttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public HTTPResponse send(HTTPRequest request) throws IOException {
+        try {
+            return toHTTPResponse(client.send(toHttpRequest(request), HttpResponse.BodyHandlers.ofString()));
+        } catch (HttpTimeoutException e) {
+            throw timeout(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("interrupted waiting for token endpoint");
+            interrupted.initCause(e);
+            throw interrupted;
+        }
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> sendAsync(HTTPRequest request, Executor executor) {
+        HttpRequest httpRequest;
+        try {
+            httpRequest = toHttpRequest(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString()).handle((response, e) -> {
+            if (e == null) {
+                return toHTTPResponse(response);
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof HttpTimeoutException) {
+                throw new CompletionException(timeout((HttpTimeoutException) cause));
+            }
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+        });
+    }
+
+    /**
+     * Report timeouts the same way as {@link HttpURLConnectionTransport}, so they are classified as such
+     */
+    private static SocketTimeoutException timeout(HttpTimeoutException e) {
+        SocketTimeoutException timeout = new SocketTimeoutException(e.getMessage());
+        timeout.initCause(e);
+        return timeout;
+    }
+
+    private static HttpRequest toHttpRequest(HTTPRequest request) throws IOException {
+        URI uri;
+        try {
+            uri = request.getURL().toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("invalid token endpoint " + request.getURL(), e);
+        }
+
+        String body = request.getQuery();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).method(request.getMethod().name(),
+                body != null ? HttpRequest.BodyPublishers.ofString(body) : HttpRequest.BodyPublishers.noBody());
+        if (request.getReadTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(request.getReadTimeout()));
+        }
+        for (Map.Entry<String, List<String>> header : request.getHeaderMap().entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey())) {
+                for (String value : header.getValue()) {
+                    builder.header(header.getKey(), value);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private static HTTPResponse toHTTPResponse(HttpResponse<String> response) {
+        HTTPResponse httpResponse = new HTTPResponse(response.statusCode());
+        response.headers().map().forEach((name, values) -> {
+            // HTTP/2 pseudo headers, like :status, are not real headers
+            if (!name.startsWith(":")) {
+                httpResponse.setHeader(name, values.toArray(new String[0]));
+            }
+        });
+        httpResponse.setContent(response.body());
+        return httpResponse;
+    }
+}
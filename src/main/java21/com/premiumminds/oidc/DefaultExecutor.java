@@ -0,0 +1,24 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executor of the asynchronous requests to providers that can only block, when none is given: each request runs in a
+ * new virtual thread, so blocking doesn't hold platform threads.
+ */
+public final class DefaultExecutor {
+    private static final ThreadFactory VIRTUAL_THREADS = Thread.ofVirtual().name("oidc-token-request").factory();
+
+    private static final Executor EXECUTOR = task -> VIRTUAL_THREADS.newThread(task).start();
+
+    private DefaultExecutor() {
+    }
+
+    /**
+     * @return the default executor
+     */
+    public static Executor get() {
+        return EXECUTOR;
+    }
+}
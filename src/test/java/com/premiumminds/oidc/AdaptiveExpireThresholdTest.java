@@ -0,0 +1,75 @@
+package com.premiumminds.oidc;
+
+import com.premiumminds.oidc.TokenManagerImplTest.OpenIDProviderTest;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveExpireThresholdTest {
+    @Test
+    public void testPercentilePlusMargin() {
+        AdaptiveExpireThreshold threshold = new AdaptiveExpireThreshold(500, 1000, 30000, TimeUnit.MILLISECONDS);
+        Assertions.assertEquals(30000, threshold.getThreshold());
+
+        for (int i = 0; i < 30; i++) {
+            threshold.record(TimeUnit.MILLISECONDS.toNanos(800));
+        }
+        threshold.record(TimeUnit.MILLISECONDS.toNanos(2000));
+        threshold.record(TimeUnit.MILLISECONDS.toNanos(3000));
+        Assertions.assertEquals(2500, threshold.getThreshold());
+    }
+
+    @Test
+    public void testBounds() {
+        AdaptiveExpireThreshold threshold = new AdaptiveExpireThreshold(500, 1000, 5000, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 32; i++) {
+            threshold.record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        Assertions.assertEquals(1000, threshold.getThreshold());
+
+        for (int i = 0; i < 32; i++) {
+            threshold.record(TimeUnit.SECONDS.toNanos(10));
+        }
+        Assertions.assertEquals(5000, threshold.getThreshold());
+    }
+
+    @Test
+    public void testShortLivedTokens() {
+        AdaptiveExpireThreshold threshold = new AdaptiveExpireThreshold(500, 1000, 30000, TimeUnit.MILLISECONDS);
+
+        Assertions.assertEquals(30000, threshold.getThreshold(300000));
+        Assertions.assertEquals(30000, threshold.getThreshold(-1));
+        Assertions.assertEquals(7500, threshold.getThreshold(30000));
+        Assertions.assertEquals(500, threshold.getThreshold(2000));
+    }
+
+    @Test
+    public void testTokenManagerLearnsFromRequests() {
+        FakeTokenClock clock = new FakeTokenClock();
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", null, 120000); // 2 minutes
+        AdaptiveExpireThreshold threshold = new AdaptiveExpireThreshold(1, 1, 30, TimeUnit.SECONDS);
+        TokenManagerImpl<String, String> tokenManager = new TokenManagerImpl<>(provider, 5000).clock(clock)
+                .expireThreshold(threshold);
+
+        tokenManager.getAccessToken();
+        Assertions.assertEquals(30000, tokenManager.getExpireThreshold());
+        clock.advance(89, TimeUnit.SECONDS);
+        tokenManager.getAccessToken();
+        // renewed 30 seconds before expiring
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+        clock.advance(2, TimeUnit.SECONDS);
+        tokenManager.getAccessToken();
+        Assertions.assertEquals(2, provider.grantTokenCount.get());
+
+        for (int i = 0; i < 8; i++) {
+            clock.advance(2, TimeUnit.MINUTES);
+            tokenManager.getAccessToken();
+        }
+        // fast requests, the margin is all that is left
+        Assertions.assertEquals(1000, tokenManager.getExpireThreshold());
+        clock.advance(118, TimeUnit.SECONDS);
+        tokenManager.getAccessToken();
+        Assertions.assertEquals(10, provider.grantTokenCount.get());
+    }
+}
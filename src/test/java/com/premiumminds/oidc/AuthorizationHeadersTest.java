@@ -0,0 +1,41 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AuthorizationHeadersTest {
+    @Test
+    public void testHeaderRenderedOncePerToken() throws Exception {
+        TokenManagerImplTest.OpenIDProviderTest provider =
+                new TokenManagerImplTest.OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        AuthorizationHeaders<String> headers =
+                new AuthorizationHeaders<>(new TokenManagerImpl<>(provider, 0), token -> "Bearer " + token);
+
+        String header = headers.get();
+        CompletableFuture<String> future = headers.getAsync();
+
+        Assertions.assertEquals("Bearer accessToken", header);
+        Assertions.assertSame(header, headers.get());
+        Assertions.assertSame(header, future.get());
+        Assertions.assertSame(future, headers.getAsync());
+    }
+
+    @Test
+    public void testInvalidateOnlyRejectedHeader() {
+        TokenManagerImplTest.OpenIDProviderTest provider =
+                new TokenManagerImplTest.OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        AuthorizationHeaders<String> headers =
+                new AuthorizationHeaders<>(new TokenManagerImpl<>(provider, 0), token -> "Bearer " + token);
+
+        String rejected = headers.get();
+        provider.accessToken = "newAccessToken";
+        headers.invalidate(rejected);
+        Assertions.assertEquals("Bearer newAccessToken", headers.get());
+
+        headers.invalidate(rejected);
+        headers.invalidate("Bearer unknown");
+        Assertions.assertEquals("Bearer newAccessToken", headers.get());
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+    }
+}
@@ -0,0 +1,47 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock that only moves when told to, to test expiration without waiting
+ */
+public class FakeTokenClock implements TokenClock {
+    private final AtomicLong nanoTime;
+
+    private final AtomicLong currentTimeMillis;
+
+    public FakeTokenClock() {
+        this(System.nanoTime(), System.currentTimeMillis());
+    }
+
+    public FakeTokenClock(long nanoTime, long currentTimeMillis) {
+        this.nanoTime = new AtomicLong(nanoTime);
+        this.currentTimeMillis = new AtomicLong(currentTimeMillis);
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanoTime.get();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis.get();
+    }
+
+    /**
+     * Move both clocks forward
+     */
+    public void advance(long duration, TimeUnit unit) {
+        nanoTime.addAndGet(unit.toNanos(duration));
+        currentTimeMillis.addAndGet(unit.toMillis(duration));
+    }
+
+    /**
+     * Adjust only the wall clock, like NTP or an operator would
+     */
+    public void adjustWallClock(long duration, TimeUnit unit) {
+        currentTimeMillis.addAndGet(unit.toMillis(duration));
+    }
+}
@@ -0,0 +1,122 @@
+package com.premiumminds.oidc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileTokenStoreTest {
+    private static final TokenCodec<String> CODEC = new TokenCodec<String>() {
+        @Override
+        public String encode(String token) {
+            return token;
+        }
+
+        @Override
+        public String decode(String value) {
+            return value;
+        }
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSaveAndLoad() {
+        FileTokenStore<String, String> store = new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC);
+        Assertions.assertNull(store.load());
+
+        store.save(new StoredTokens<>("accessToken", "refreshToken", 1000, Long.MAX_VALUE));
+        store.save(new StoredTokens<>("newAccessToken", null, 2000, 3000));
+
+        StoredTokens<String, String> loaded = new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC).load();
+        Assertions.assertEquals("newAccessToken", loaded.getAccessToken());
+        Assertions.assertNull(loaded.getRefreshToken());
+        Assertions.assertEquals(2000, loaded.getFetchedAt());
+        Assertions.assertEquals(3000, loaded.getExpiresAt());
+    }
+
+    @Test
+    public void testCorruptedFile() throws IOException {
+        Files.write(dir.resolve("tokens"), new byte[] {0x4f, 0x49, 0x44, 0x43, 1, 0, 0});
+        FileTokenStore<String, String> store = new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC);
+
+        Assertions.assertNull(store.load());
+    }
+
+    @Test
+    public void testLeaseIsExclusive() {
+        FileTokenStore<String, String> store = new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC);
+        FileTokenStore<String, String> other = new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC);
+
+        TokenStore.Lease lease = store.tryLease();
+        Assertions.assertNotNull(lease);
+        Assertions.assertNull(other.tryLease());
+        lease.close();
+
+        TokenStore.Lease otherLease = other.tryLease();
+        Assertions.assertNotNull(otherLease);
+        otherLease.close();
+    }
+
+    @Test
+    public void testTokenManagersShareFile() {
+        TokenManagerImplTest.OpenIDProviderTest provider =
+                new TokenManagerImplTest.OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        TokenManagerImplTest.OpenIDProviderTest otherProvider =
+                new TokenManagerImplTest.OpenIDProviderTest("otherAccessToken", "refreshToken", 60000); // 1 minute
+
+        TokenManager<String> tokenManager = new TokenManagerImpl<String, String>(provider, 0)
+                .tokenStore(new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC));
+        TokenManager<String> otherTokenManager = new TokenManagerImpl<String, String>(otherProvider, 0)
+                .tokenStore(new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC));
+
+        Assertions.assertEquals("accessToken", tokenManager.getAccessToken());
+        Assertions.assertEquals("accessToken", otherTokenManager.getAccessToken());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+        Assertions.assertEquals(0, otherProvider.grantTokenCount.get());
+    }
+
+    @Test
+    public void testEncrypted() throws Exception {
+        SecretKey key = KeyGenerator.getInstance("AES").generateKey();
+        FileTokenStore<String, String> store = new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC, key);
+
+        store.save(new StoredTokens<>("accessToken", "refreshToken", 1000, 2000));
+
+        Assertions.assertFalse(new String(Files.readAllBytes(dir.resolve("tokens")), "ISO-8859-1").contains("Token"));
+        StoredTokens<String, String> loaded = new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC, key).load();
+        Assertions.assertEquals("accessToken", loaded.getAccessToken());
+        Assertions.assertEquals("refreshToken", loaded.getRefreshToken());
+        Assertions.assertEquals(1000, loaded.getFetchedAt());
+        Assertions.assertEquals(2000, loaded.getExpiresAt());
+
+        SecretKey otherKey = KeyGenerator.getInstance("AES").generateKey();
+        Assertions.assertNull(new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC, otherKey).load());
+        Assertions.assertNull(new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC).load());
+    }
+
+    @Test
+    public void testWarmStart() {
+        long now = System.currentTimeMillis();
+        FileTokenStore<String, String> store = new FileTokenStore<>(dir.resolve("tokens"), CODEC, CODEC);
+        store.save(new StoredTokens<>("storedAccessToken", "refreshToken", now, now + 60000)); // 1 minute
+
+        TokenManagerImplTest.OpenIDProviderTest provider =
+                new TokenManagerImplTest.OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        TokenManagerImpl<String, String> tokenManager =
+                new TokenManagerImpl<String, String>(provider, 5000).tokenStore(store).loadStoredTokens();
+        try (TokenManager<String> scheduled = new ScheduledTokenManager<>(tokenManager, scheduler, true, 0.75, 0)) {
+            Assertions.assertEquals("storedAccessToken", scheduled.getAccessToken());
+            Assertions.assertEquals(0, provider.grantTokenCount.get());
+            Assertions.assertEquals(0, provider.refreshTokenCount.get());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.premiumminds.oidc;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HedgingOpenIDProviderTest {
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testSlowEndpointHedged() {
+        Endpoint slow = new Endpoint("slow", 1000);
+        Endpoint fast = new Endpoint("fast", 10);
+        HedgingOpenIDProvider<String, String> provider =
+                new HedgingOpenIDProvider<>(Arrays.asList(slow, fast), scheduler, 50, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        Assertions.assertEquals("fast", provider.grantToken().getAccessToken());
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        Assertions.assertEquals(1, slow.requests.get());
+        Assertions.assertEquals(1, fast.requests.get());
+
+        // the fast endpoint is now the one with the best average
+        Assertions.assertEquals("fast", provider.grantToken().getAccessToken());
+        Assertions.assertEquals(1, slow.requests.get());
+        Assertions.assertEquals(2, fast.requests.get());
+    }
+
+    @Test
+    public void testTransientFailureFailsOver() {
+        Endpoint failing = new Endpoint("failing", 0);
+        failing.failure = ProviderErrorKind.CONNECTION;
+        Endpoint healthy = new Endpoint("healthy", 0);
+        HedgingOpenIDProvider<String, String> provider =
+                new HedgingOpenIDProvider<>(Arrays.asList(failing, healthy), scheduler, 1, TimeUnit.SECONDS);
+
+        Assertions.assertEquals("healthy", provider.grantToken().getAccessToken());
+        Assertions.assertEquals("healthy", provider.grantToken().getAccessToken());
+        // the failing endpoint is avoided for a while
+        Assertions.assertEquals(1, failing.requests.get());
+        Assertions.assertEquals(2, healthy.requests.get());
+    }
+
+    @Test
+    public void testRejectedGrantNotFailedOver() {
+        Endpoint rejecting = new Endpoint("rejecting", 0);
+        rejecting.failure = ProviderErrorKind.INVALID_CLIENT;
+        Endpoint other = new Endpoint("other", 0);
+        HedgingOpenIDProvider<String, String> provider =
+                new HedgingOpenIDProvider<>(Arrays.asList(rejecting, other), scheduler, 1, TimeUnit.SECONDS);
+
+        ProviderRequestException e = Assertions.assertThrows(ProviderRequestException.class, provider::grantToken);
+        Assertions.assertEquals(ProviderErrorKind.INVALID_CLIENT, e.getKind());
+        Assertions.assertEquals(0, other.requests.get());
+    }
+
+    @Test
+    public void testRefreshNotHedged() {
+        Endpoint slow = new Endpoint("slow", 200);
+        Endpoint fast = new Endpoint("fast", 0);
+        HedgingOpenIDProvider<String, String> provider =
+                new HedgingOpenIDProvider<>(Arrays.asList(slow, fast), scheduler, 10, TimeUnit.MILLISECONDS);
+
+        Assertions.assertEquals("slow", provider.refreshToken("refreshToken").getAccessToken());
+        Assertions.assertEquals(0, fast.requests.get());
+
+        provider.hedgeRefreshes();
+        Assertions.assertEquals("fast", provider.refreshToken("refreshToken").getAccessToken());
+    }
+
+    @Test
+    public void testRefreshTimeoutNotFailedOver() {
+        Endpoint timingOut = new Endpoint("timingOut", 0);
+        timingOut.failure = ProviderErrorKind.TIMEOUT;
+        Endpoint other = new Endpoint("other", 0);
+        HedgingOpenIDProvider<String, String> provider =
+                new HedgingOpenIDProvider<>(Arrays.asList(timingOut, other), scheduler, 1, TimeUnit.SECONDS);
+
+        ProviderRequestException e = Assertions.assertThrows(ProviderRequestException.class,
+                () -> provider.refreshToken("refreshToken"));
+        Assertions.assertEquals(ProviderErrorKind.TIMEOUT, e.getKind());
+        Assertions.assertEquals(1, timingOut.requests.get());
+        Assertions.assertEquals(0, other.requests.get());
+    }
+
+    @Test
+    public void testRefreshConnectionLostNotFailedOver() {
+        Endpoint resetting = new Endpoint("resetting", 0);
+        resetting.failure = ProviderErrorKind.CONNECTION_LOST;
+        Endpoint other = new Endpoint("other", 0);
+        HedgingOpenIDProvider<String, String> provider =
+                new HedgingOpenIDProvider<>(Arrays.asList(resetting, other), scheduler, 1, TimeUnit.SECONDS);
+
+        ProviderRequestException e = Assertions.assertThrows(ProviderRequestException.class,
+                () -> provider.refreshToken("refreshToken"));
+        Assertions.assertEquals(ProviderErrorKind.CONNECTION_LOST, e.getKind());
+        Assertions.assertEquals(0, other.requests.get());
+    }
+
+    @Test
+    public void testRefreshConnectionFailureFailsOver() {
+        Endpoint unreachable = new Endpoint("unreachable", 0);
+        unreachable.failure = ProviderErrorKind.CONNECTION;
+        Endpoint other = new Endpoint("other", 0);
+        HedgingOpenIDProvider<String, String> provider =
+                new HedgingOpenIDProvider<>(Arrays.asList(unreachable, other), scheduler, 1, TimeUnit.SECONDS);
+
+        Assertions.assertEquals("other", provider.refreshToken("refreshToken").getAccessToken());
+        Assertions.assertEquals(1, unreachable.requests.get());
+    }
+
+    @Test
+    public void testAllEndpointsFailing() {
+        Endpoint first = new Endpoint("first", 0);
+        first.failure = ProviderErrorKind.TIMEOUT;
+        Endpoint second = new Endpoint("second", 20);
+        second.failure = ProviderErrorKind.SERVER_ERROR;
+        HedgingOpenIDProvider<String, String> provider =
+                new HedgingOpenIDProvider<>(Arrays.asList(first, second), scheduler, 1, TimeUnit.SECONDS);
+
+        ProviderRequestException e = Assertions.assertThrows(ProviderRequestException.class, provider::grantToken);
+        Assertions.assertEquals(ProviderErrorKind.SERVER_ERROR, e.getKind());
+        Assertions.assertEquals(1, first.requests.get());
+        Assertions.assertEquals(1, second.requests.get());
+    }
+
+    private class Endpoint implements AsyncOpenIDProvider<String, String> {
+        private final String accessToken;
+
+        private final long latency;
+
+        private final AtomicInteger requests = new AtomicInteger();
+
+        private volatile ProviderErrorKind failure;
+
+        private Endpoint(String accessToken, long latency) {
+            this.accessToken = accessToken;
+            this.latency = latency;
+        }
+
+        @Override
+        public CompletableFuture<Tokens<String, String>> refreshTokenAsync(String refreshToken) {
+            return grantTokenAsync();
+        }
+
+        @Override
+        public CompletableFuture<Tokens<String, String>> grantTokenAsync() {
+            requests.incrementAndGet();
+            CompletableFuture<Tokens<String, String>> response = new CompletableFuture<>();
+            scheduler.schedule(() -> {
+                if (failure != null) {
+                    response.completeExceptionally(new ProviderRequestException(failure, "failing " + accessToken));
+                } else {
+                    response.complete(new Tokens<>(accessToken, "refreshToken", 60000));
+                }
+            }, latency, TimeUnit.MILLISECONDS);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.premiumminds.oidc;
+
+import com.premiumminds.oidc.httpclient5.HttpClient5TokenHandler;
+import com.premiumminds.oidc.jdkhttp.TokenHttpClient;
+import com.premiumminds.oidc.okhttp.OkHttpTokenInterceptor;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HttpClientIntegrationsTest {
+    private HttpServer server;
+
+    private URI resource;
+
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    private TokenManagerImplTest.OpenIDProviderTest provider;
+
+    private AuthorizationHeaders<String> headers;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/resource", exchange -> {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            received.add(authorization);
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() != -1) {
+                    // drain the request so the connection can be reused
+                }
+            }
+            if (!"Bearer newAccessToken".equals(authorization)) {
+                byte[] body = "unauthorized".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(401, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                return;
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        resource = URI.create("http://localhost:" + server.getAddress().getPort() + "/resource");
+
+        provider = new TokenManagerImplTest.OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        headers = new AuthorizationHeaders<>(new TokenManagerImpl<>(provider, 0), token -> "Bearer " + token);
+        // the resource server only accepts the token issued after this one
+        headers.get();
+        provider.accessToken = "newAccessToken";
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testOkHttpRetriesOnUnauthorized() throws IOException {
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(new OkHttpTokenInterceptor(headers)).build();
+
+        try (Response response = client.newCall(new Request.Builder().url(resource.toURL()).build()).execute()) {
+            Assertions.assertEquals(200, response.code());
+            Assertions.assertEquals("ok", response.body().string());
+        }
+        assertRetriedOnce();
+    }
+
+    @Test
+    public void testHttpClient5RetriesOnUnauthorized() throws Exception {
+        try (CloseableHttpClient client = HttpClients.custom()
+                .addExecInterceptorFirst("oidc-token", new HttpClient5TokenHandler(headers))
+                .build()) {
+            String body = client.execute(new HttpGet(resource), response -> {
+                Assertions.assertEquals(200, response.getCode());
+                return EntityUtils.toString(response.getEntity());
+            });
+            Assertions.assertEquals("ok", body);
+        }
+        assertRetriedOnce();
+    }
+
+    @Test
+    public void testJavaHttpClientRetriesOnUnauthorized() throws Exception {
+        TokenHttpClient client = new TokenHttpClient(HttpClient.newHttpClient(), headers);
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(resource).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("ok", response.body());
+        assertRetriedOnce();
+    }
+
+    @Test
+    public void testJavaHttpClientAsyncRetriesOnUnauthorized() throws Exception {
+        TokenHttpClient client = new TokenHttpClient(HttpClient.newHttpClient(), headers);
+
+        HttpResponse<String> response = client.sendAsync(HttpRequest.newBuilder(resource).build(),
+                HttpResponse.BodyHandlers.ofString()).get();
+
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("ok", response.body());
+        assertRetriedOnce();
+    }
+
+    @Test
+    public void testJavaHttpClientUnauthorizedStreamNotHandedToCaller() throws Exception {
+        TokenHttpClient client = new TokenHttpClient(HttpClient.newHttpClient(), headers);
+        List<Integer> handled = new CopyOnWriteArrayList<>();
+
+        HttpResponse<InputStream> response = client.send(HttpRequest.newBuilder(resource).build(), info -> {
+            handled.add(info.statusCode());
+            return HttpResponse.BodyHandlers.ofInputStream().apply(info);
+        });
+
+        Assertions.assertEquals(200, response.statusCode());
+        try (InputStream body = response.body()) {
+            Assertions.assertEquals("ok", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        Assertions.assertEquals(Collections.singletonList(200), handled);
+        assertRetriedOnce();
+    }
+
+    @Test
+    public void testJavaHttpClientOneShotBodyNotSentAgain() throws Exception {
+        TokenHttpClient client = new TokenHttpClient(HttpClient.newHttpClient(), headers);
+        HttpRequest request = HttpRequest.newBuilder(resource)
+                .POST(HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofString("data")))
+                .build();
+
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+        Assertions.assertEquals(401, response.statusCode());
+        try (InputStream body = response.body()) {
+            Assertions.assertEquals("unauthorized", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        Assertions.assertEquals(1, received.size());
+    }
+
+    private void assertRetriedOnce() {
+        Assertions.assertEquals(2, received.size());
+        Assertions.assertEquals("Bearer accessToken", received.get(0));
+        Assertions.assertEquals("Bearer newAccessToken", received.get(1));
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+    }
+}
@@ -0,0 +1,38 @@
+package com.premiumminds.oidc;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ResiliencePolicyTest {
+
+    @Test
+    public void testSubMillisecondBackoffRejected() {
+        ResiliencePolicy policy = new ResiliencePolicy(null);
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> policy.backoff(500, 30000, TimeUnit.MICROSECONDS));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> policy.backoff(1, 1, TimeUnit.NANOSECONDS));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> policy.backoff(2, 1, TimeUnit.SECONDS));
+
+        policy.backoff(1000, 2000, TimeUnit.MICROSECONDS).jitter(0);
+        Assertions.assertEquals(1, policy.backoff(1));
+        Assertions.assertEquals(2, policy.backoff(2));
+    }
+
+    @Test
+    public void testSubMillisecondOpenDurationRejected() {
+        ResiliencePolicy policy = new ResiliencePolicy(null);
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> policy.circuitBreaker(5, 500, TimeUnit.MICROSECONDS));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> policy.circuitBreaker(5, 0, TimeUnit.SECONDS));
+        Assertions.assertEquals(30000, policy.getOpenDuration());
+
+        policy.circuitBreaker(5, 1, TimeUnit.SECONDS);
+        Assertions.assertEquals(1000, policy.getOpenDuration());
+    }
+}
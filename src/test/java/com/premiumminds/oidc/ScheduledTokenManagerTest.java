@@ -0,0 +1,50 @@
+package com.premiumminds.oidc;
+
+import com.premiumminds.oidc.TokenManagerImplTest.OpenIDProviderTest;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ScheduledTokenManagerTest {
+    @Test
+    public void testRefreshInBackground() throws InterruptedException {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 2000); // 2 seconds
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        TokenManager<String> tokenManager =
+                new ScheduledTokenManager<>(new TokenManagerImpl<>(provider, 0), scheduler, true, 0.5, 0);
+
+        Thread.sleep(500);
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+        Assertions.assertEquals(0, provider.refreshTokenCount.get());
+
+        Assertions.assertEquals("accessToken", tokenManager.getAccessToken());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+
+        Thread.sleep(1000); // refreshed at 50% of the lifetime
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+
+        tokenManager.close();
+        Assertions.assertTrue(scheduler.isShutdown());
+    }
+
+    @Test
+    public void testCloseStopsRefreshing() throws InterruptedException {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 2000); // 2 seconds
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            TokenManager<String> tokenManager =
+                    new ScheduledTokenManager<>(new TokenManagerImpl<>(provider, 0), scheduler, false, 0.5, 0);
+
+            Thread.sleep(500);
+            tokenManager.close();
+            Thread.sleep(1000);
+
+            Assertions.assertEquals(1, provider.grantTokenCount.get());
+            Assertions.assertEquals(0, provider.refreshTokenCount.get());
+            Assertions.assertFalse(scheduler.isShutdown());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -1,5 +1,17 @@
 package com.premiumminds.oidc;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -110,14 +122,577 @@ public class TokenManagerImplTest {
         Assertions.assertTrue(provider.refreshTokenCalled);
     }
 
+    @Test
+    public void testConcurrentCallersShareOneGrant() throws Exception {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        provider.delay = 200;
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return tokenManager.getAccessToken();
+                }));
+            }
+            start.countDown();
+
+            for (Future<String> result : results) {
+                Assertions.assertEquals("accessToken", result.get());
+            }
+            Assertions.assertEquals(1, provider.grantTokenCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersShareFailure() throws Exception {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        provider.delay = 200;
+        provider.failGrantToken = true;
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return tokenManager.getAccessToken();
+                }));
+            }
+            start.countDown();
+
+            for (Future<String> result : results) {
+                try {
+                    result.get();
+                    Assertions.fail("expected grant failure");
+                } catch (ExecutionException e) {
+                    Assertions.assertEquals("failing grant token", e.getCause().getMessage());
+                }
+            }
+            Assertions.assertEquals(1, provider.grantTokenCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncCallersShareOneFuture() throws Exception {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        provider.delay = 200;
+        AsyncTokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        CompletableFuture<String> first = tokenManager.getAccessTokenAsync();
+        CompletableFuture<String> second = tokenManager.getAccessTokenAsync();
+
+        Assertions.assertSame(first, second);
+        Assertions.assertFalse(first.isDone());
+        Assertions.assertEquals("accessToken", first.get());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+
+        CompletableFuture<String> cached = tokenManager.getAccessTokenAsync();
+        Assertions.assertTrue(cached.isDone());
+        Assertions.assertSame(cached, tokenManager.getAccessTokenAsync());
+        Assertions.assertEquals("accessToken", cached.get());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+    }
+
+    @Test
+    public void testAsyncValidityExpiredWithRefreshTokenButInvalid() throws Exception {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 1000); // 1 seconds
+        AsyncTokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        tokenManager.getAccessTokenAsync().get();
+        provider.reset();
+        provider.failRefreshToken = true;
+
+        Thread.sleep(1001); // 1 seconds and 1 millisecond
+
+        String accessToken = tokenManager.getAccessTokenAsync().get();
+
+        Assertions.assertEquals("accessToken", accessToken);
+        Assertions.assertTrue(provider.grantTokenCalled);
+        Assertions.assertTrue(provider.refreshTokenCalled);
+    }
+
+    @Test
+    public void testResilienceServesTokenUntilItReallyExpires() throws Exception {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", null, 1000); // 1 second
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            TokenManagerImpl<String, String> tokenManager = new TokenManagerImpl<>(provider, 700) // 700 milliseconds
+                    .resilience(new ResiliencePolicy(scheduler)
+                            .backoff(50, 100, TimeUnit.MILLISECONDS)
+                            .circuitBreaker(100, 1, TimeUnit.MINUTES));
+
+            tokenManager.getAccessToken();
+            provider.failGrantToken = true;
+            provider.accessToken = "newAccessToken";
+
+            Thread.sleep(400); // past the expire threshold
+            Assertions.assertEquals("accessToken", tokenManager.getAccessToken());
+            Assertions.assertEquals("accessToken", tokenManager.getAccessTokenAsync().get());
+
+            Thread.sleep(300); // retried in background meanwhile
+            Assertions.assertTrue(provider.grantTokenCount.get() > 2);
+            Assertions.assertEquals("accessToken", tokenManager.getAccessToken());
+
+            Thread.sleep(400); // past the real expiration
+            Assertions.assertThrows(RuntimeException.class, tokenManager::getAccessToken);
+
+            provider.failGrantToken = false;
+            Assertions.assertEquals("newAccessToken", tokenManager.getAccessToken());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResilienceRecoversInBackground() throws Exception {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", null, 1000); // 1 second
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            TokenManagerImpl<String, String> tokenManager = new TokenManagerImpl<>(provider, 700) // 700 milliseconds
+                    .resilience(new ResiliencePolicy(scheduler).backoff(50, 50, TimeUnit.MILLISECONDS).jitter(0));
+
+            tokenManager.getAccessToken();
+            provider.failGrantToken = true;
+            provider.accessToken = "newAccessToken";
+
+            Thread.sleep(400); // past the expire threshold
+            Assertions.assertEquals("accessToken", tokenManager.getAccessToken());
+            provider.failGrantToken = false;
+
+            Thread.sleep(200); // retried in background meanwhile
+            int grants = provider.grantTokenCount.get();
+            Assertions.assertEquals("newAccessToken", tokenManager.getAccessToken());
+            Assertions.assertEquals(grants, provider.grantTokenCount.get());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResilienceCircuitOpenFailsFast() {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", null, 1000); // 1 second
+        provider.failGrantToken = true;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            TokenManagerImpl<String, String> tokenManager = new TokenManagerImpl<>(provider, 0)
+                    .resilience(new ResiliencePolicy(scheduler).circuitBreaker(2, 1, TimeUnit.MINUTES));
+
+            Assertions.assertThrows(RuntimeException.class, tokenManager::getAccessToken);
+            Assertions.assertThrows(RuntimeException.class, tokenManager::getAccessToken);
+            TokenUnavailableException e =
+                    Assertions.assertThrows(TokenUnavailableException.class, tokenManager::getAccessToken);
+            ExecutionException async =
+                    Assertions.assertThrows(ExecutionException.class, () -> tokenManager.getAccessTokenAsync().get());
+
+            Assertions.assertEquals("failing grant token", e.getCause().getMessage());
+            Assertions.assertTrue(async.getCause() instanceof TokenUnavailableException);
+            Assertions.assertEquals(2, provider.grantTokenCount.get());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTokenStoreSharesTokensBetweenManagers() throws Exception {
+        TokenStore<String, String> store = new InMemoryTokenStore<>();
+        int nodes = 20;
+        List<OpenIDProviderTest> providers = new ArrayList<>();
+        List<TokenManagerImpl<String, String>> tokenManagers = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+            provider.delay = 100;
+            providers.add(provider);
+            tokenManagers.add(new TokenManagerImpl<String, String>(provider, 0).tokenStore(store));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(nodes);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (TokenManagerImpl<String, String> tokenManager : tokenManagers) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return tokenManager.getAccessToken();
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                Assertions.assertEquals("accessToken", result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(1, providers.stream().mapToInt(provider -> provider.grantTokenCount.get()).sum());
+        Assertions.assertEquals("refreshToken", store.load().getRefreshToken());
+    }
+
+    @Test
+    public void testTokenStoreIgnoresExpiredTokens() {
+        TokenStore<String, String> store = new InMemoryTokenStore<>();
+        long now = System.currentTimeMillis();
+        store.save(new StoredTokens<>("oldAccessToken", null, now - 2000, now - 1000));
+
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", null, 1000); // 1 second
+        TokenManager<String> tokenManager = new TokenManagerImpl<String, String>(provider, 0).tokenStore(store);
+
+        Assertions.assertEquals("accessToken", tokenManager.getAccessToken());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+        Assertions.assertEquals("accessToken", store.load().getAccessToken());
+    }
+
+    @Test
+    public void testTokenStoreLeaseIsExclusive() throws InterruptedException {
+        TokenStore<String, String> store = new InMemoryTokenStore<>(100, TimeUnit.MILLISECONDS);
+
+        TokenStore.Lease lease = store.tryLease();
+        Assertions.assertNotNull(lease);
+        Assertions.assertNull(store.tryLease());
+        lease.close();
+
+        Assertions.assertNotNull(store.tryLease()); // never released
+        Thread.sleep(150);
+        Assertions.assertNotNull(store.tryLease());
+    }
+
+    @Test
+    public void testTokenStoreLeaseWaitBoundedByDeadline() {
+        TokenStore<String, String> store = new InMemoryTokenStore<>(1, TimeUnit.HOURS);
+        TokenStore.Lease stuck = store.tryLease(); // held by a token manager that hangs
+        Assertions.assertNotNull(stuck);
+
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        TokenManager<String> tokenManager = new TokenManagerImpl<String, String>(provider, 0).tokenStore(store)
+                .deadline(200, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        Assertions.assertEquals("accessToken", tokenManager.getAccessToken());
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assertions.assertTrue(waited >= 200 && waited < 2000, "waited " + waited + " ms");
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+        Assertions.assertNull(store.load());
+    }
+
+    @Test
+    public void testClockExpiry() {
+        FakeTokenClock clock = new FakeTokenClock();
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        TokenManagerImpl<String, String> tokenManager = new TokenManagerImpl<>(provider, 5000).clock(clock);
+
+        tokenManager.getAccessToken();
+        clock.advance(54, TimeUnit.SECONDS);
+        tokenManager.getAccessToken();
+        Assertions.assertEquals(0, provider.refreshTokenCount.get());
+
+        clock.advance(2, TimeUnit.SECONDS); // inside the expire threshold
+        tokenManager.getAccessToken();
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+    }
+
+    @Test
+    public void testWallClockAdjustmentsIgnored() {
+        FakeTokenClock clock = new FakeTokenClock();
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        TokenManagerImpl<String, String> tokenManager = new TokenManagerImpl<>(provider, 5000).clock(clock);
+
+        tokenManager.getAccessToken();
+        clock.adjustWallClock(1, TimeUnit.HOURS);
+        tokenManager.getAccessToken();
+        clock.adjustWallClock(-2, TimeUnit.HOURS);
+        tokenManager.getAccessToken();
+
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+        Assertions.assertEquals(0, provider.refreshTokenCount.get());
+    }
+
+    @Test
+    public void testNanoTimeOverflow() {
+        FakeTokenClock clock = new FakeTokenClock(Long.MAX_VALUE - TimeUnit.SECONDS.toNanos(10), 0);
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        TokenManagerImpl<String, String> tokenManager = new TokenManagerImpl<>(provider, 5000).clock(clock);
+
+        tokenManager.getAccessToken();
+        clock.advance(30, TimeUnit.SECONDS); // nanoTime wrapped around
+        tokenManager.getAccessToken();
+        Assertions.assertEquals(0, provider.refreshTokenCount.get());
+
+        clock.advance(30, TimeUnit.SECONDS);
+        tokenManager.getAccessToken();
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+    }
+
+    @Test
+    public void testInvalidateRenewsRejectedToken() {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        String rejected = tokenManager.getAccessToken();
+        provider.accessToken = "newAccessToken";
+        tokenManager.invalidate(rejected);
+
+        Assertions.assertEquals("newAccessToken", tokenManager.getAccessToken());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+    }
+
+    @Test
+    public void testInvalidateIgnoresReplacedToken() {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        String rejected = tokenManager.getAccessToken();
+        provider.accessToken = "newAccessToken";
+        tokenManager.invalidate(rejected);
+        tokenManager.getAccessToken();
+        // late callers rejected with the old token must not discard the new one
+        tokenManager.invalidate(rejected);
+
+        Assertions.assertEquals("newAccessToken", tokenManager.getAccessToken());
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+    }
+
+    @Test
+    public void testConcurrentInvalidateCausesOneRefresh() throws Exception {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        provider.delay = 100;
+        TokenManager<String> tokenManager =
+                new TokenManagerImpl<>(provider, 0).minForcedRefreshInterval(0, TimeUnit.MILLISECONDS);
+
+        String rejected = tokenManager.getAccessToken();
+        provider.accessToken = "newAccessToken";
+
+        int callers = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    // every caller got a 401 with the same token
+                    tokenManager.invalidate(rejected);
+                    return tokenManager.getAccessToken();
+                }));
+            }
+            start.countDown();
+
+            for (Future<String> result : results) {
+                Assertions.assertEquals("newAccessToken", result.get());
+            }
+            Assertions.assertEquals(1, provider.grantTokenCount.get());
+            Assertions.assertEquals(1, provider.refreshTokenCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMinForcedRefreshInterval() {
+        FakeTokenClock clock = new FakeTokenClock();
+        // the provider keeps issuing the same token, which the resource server keeps rejecting
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0).clock(clock)
+                .minForcedRefreshInterval(5, TimeUnit.SECONDS);
+
+        tokenManager.invalidate(tokenManager.getAccessToken());
+        tokenManager.invalidate(tokenManager.getAccessToken());
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+
+        clock.advance(4, TimeUnit.SECONDS);
+        tokenManager.invalidate(tokenManager.getAccessToken());
+        tokenManager.getAccessToken();
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+
+        clock.advance(2, TimeUnit.SECONDS);
+        tokenManager.invalidate(tokenManager.getAccessToken());
+        tokenManager.getAccessToken();
+        Assertions.assertEquals(2, provider.refreshTokenCount.get());
+    }
+
+    @Test
+    public void testRefreshInvalidGrantFallsBackToGrant() throws InterruptedException {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 1000); // 1 second
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        tokenManager.getAccessToken();
+        provider.failRefreshToken = true;
+        provider.refreshErrorKind = ProviderErrorKind.INVALID_GRANT;
+        Thread.sleep(1100);
+        tokenManager.getAccessToken();
+
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+        Assertions.assertEquals(2, provider.grantTokenCount.get());
+    }
+
+    @Test
+    public void testRefreshTransientErrorRetriedWithoutGrant() throws InterruptedException {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 1000); // 1 second
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        tokenManager.getAccessToken();
+        provider.failRefreshToken = true;
+        provider.refreshErrorKind = ProviderErrorKind.SERVER_ERROR;
+        Thread.sleep(1100);
+
+        long start = System.nanoTime();
+        ProviderRequestException e = Assertions.assertThrows(ProviderRequestException.class,
+                tokenManager::getAccessToken);
+        Assertions.assertEquals(ProviderErrorKind.SERVER_ERROR, e.getKind());
+        // retried after a backoff
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        Assertions.assertEquals(2, provider.refreshTokenCount.get());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+
+        ExecutionException async = Assertions.assertThrows(ExecutionException.class,
+                () -> ((AsyncTokenManager<String>) tokenManager).getAccessTokenAsync().get());
+        Assertions.assertTrue(async.getCause() instanceof ProviderRequestException);
+        Assertions.assertEquals(4, provider.refreshTokenCount.get());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+    }
+
+    @Test
+    public void testRefreshTimeoutNotRetried() throws InterruptedException {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 1000); // 1 second
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        tokenManager.getAccessToken();
+        provider.failRefreshToken = true;
+        provider.refreshErrorKind = ProviderErrorKind.TIMEOUT;
+        Thread.sleep(1100);
+
+        ProviderRequestException e = Assertions.assertThrows(ProviderRequestException.class,
+                tokenManager::getAccessToken);
+        Assertions.assertEquals(ProviderErrorKind.TIMEOUT, e.getKind());
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+    }
+
+    @Test
+    public void testRefreshConnectionLostFallsBackToGrant() throws InterruptedException {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 1000); // 1 second
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        tokenManager.getAccessToken();
+        provider.failRefreshToken = true;
+        provider.refreshErrorKind = ProviderErrorKind.CONNECTION_LOST;
+        Thread.sleep(1100);
+        tokenManager.getAccessToken();
+
+        Assertions.assertEquals(1, provider.refreshTokenCount.get());
+        Assertions.assertEquals(2, provider.grantTokenCount.get());
+    }
+
+    @Test
+    public void testDeadlineStopsRetries() {
+        FakeTokenClock clock = new FakeTokenClock();
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000) { // 1 minute
+            @Override
+            public Tokens refreshToken(String refreshToken) {
+                clock.advance(3, TimeUnit.SECONDS); // slow provider
+                return super.refreshToken(refreshToken);
+            }
+        };
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0).clock(clock)
+                .fallbackPolicy(FallbackPolicy.retrying(10))
+                .deadline(5, TimeUnit.SECONDS);
+
+        tokenManager.getAccessToken();
+        provider.failRefreshToken = true;
+        provider.refreshErrorKind = ProviderErrorKind.SERVER_ERROR;
+        clock.advance(61, TimeUnit.SECONDS);
+
+        Assertions.assertThrows(ProviderRequestException.class, tokenManager::getAccessToken);
+        Assertions.assertEquals(2, provider.refreshTokenCount.get());
+        Assertions.assertEquals(1, provider.grantTokenCount.get());
+    }
+
+    @Test
+    public void testTokenChangedDeliveredOnceInOrder() throws InterruptedException {
+        FakeTokenClock clock = new FakeTokenClock();
+        OpenIDProviderTest provider = new OpenIDProviderTest("token0", "refreshToken", 60000); // 1 minute
+        TokenManagerImpl<String, String> tokenManager = new TokenManagerImpl<>(provider, 0).clock(clock);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        TokenManagerImpl.Subscription<String, String> subscription = tokenManager.onTokenChanged(tokens -> {
+            delivered.add(tokens.getAccessToken());
+            try {
+                Thread.sleep(5); // slow listener
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, executor);
+
+        for (int i = 0; i < 10; i++) {
+            provider.accessToken = "token" + i;
+            for (int j = 0; j < 3; j++) {
+                tokenManager.getAccessToken(); // cache hits are not delivered
+            }
+            clock.advance(61, TimeUnit.SECONDS);
+        }
+        for (int i = 0; i < 100 && delivered.size() < 10; i++) {
+            Thread.sleep(50);
+        }
+        subscription.close();
+        provider.accessToken = "closed";
+        tokenManager.getAccessToken();
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("token" + i);
+        }
+        Assertions.assertEquals(expected, delivered);
+        Assertions.assertEquals(11, provider.grantTokenCount.get() + provider.refreshTokenCount.get());
+    }
+
+    @Test
+    public void testTokenChangedListenerFailureNotFatal() {
+        OpenIDProviderTest provider = new OpenIDProviderTest("accessToken", "refreshToken", 60000); // 1 minute
+        TokenManagerImpl<String, String> tokenManager = new TokenManagerImpl<>(provider, 0);
+        AtomicInteger calls = new AtomicInteger();
+        tokenManager.onTokenChanged(tokens -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("listener failed");
+        }, Runnable::run);
+
+        Assertions.assertEquals("accessToken", tokenManager.getAccessToken());
+        tokenManager.invalidate("accessToken");
+        Assertions.assertEquals("accessToken", tokenManager.getAccessToken());
+        Assertions.assertEquals(2, calls.get());
+    }
+
     public static class OpenIDProviderTest implements OpenIDProvider<String, String> {
         private boolean refreshTokenCalled;
 
         private boolean grantTokenCalled;
 
-        private boolean failRefreshToken = false;
+        private volatile boolean failRefreshToken = false;
+
+        private volatile boolean failGrantToken = false;
+
+        private volatile ProviderErrorKind refreshErrorKind;
 
-        private String accessToken;
+        final AtomicInteger grantTokenCount = new AtomicInteger();
+
+        final AtomicInteger refreshTokenCount = new AtomicInteger();
+
+        private long delay = 0;
+
+        volatile String accessToken;
 
         private String refreshToken;
 
@@ -132,7 +707,11 @@ public class TokenManagerImplTest {
         @Override
         public Tokens refreshToken(String refreshToken) {
             this.refreshTokenCalled = true;
+            this.refreshTokenCount.incrementAndGet();
             if (failRefreshToken) {
+                if (refreshErrorKind != null) {
+                    throw new ProviderRequestException(refreshErrorKind, "failing refresh token");
+                }
                 throw new RuntimeException("failing refresh token");
             }
             return new Tokens(accessToken, this.refreshToken, expiresIn);
@@ -141,6 +720,17 @@ public class TokenManagerImplTest {
         @Override
         public Tokens grantToken() {
             this.grantTokenCalled = true;
+            this.grantTokenCount.incrementAndGet();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failGrantToken) {
+                throw new RuntimeException("failing grant token");
+            }
             return new Tokens(accessToken, refreshToken, expiresIn);
         }
 
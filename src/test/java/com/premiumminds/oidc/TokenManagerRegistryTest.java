@@ -0,0 +1,144 @@
+package com.premiumminds.oidc;
+
+import com.premiumminds.oidc.TokenManagerImplTest.OpenIDProviderTest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TokenManagerRegistryTest {
+    @Test
+    public void testSameKeySameTokenManager() {
+        AtomicInteger created = new AtomicInteger();
+        TokenManagerRegistry<String, String> registry = new TokenManagerRegistry<>(key -> {
+            created.incrementAndGet();
+            return new TokenManagerImpl<>(new OpenIDProviderTest(key, null, 60000), 0);
+        }, 10, 1, TimeUnit.MINUTES);
+
+        Assertions.assertEquals("a", registry.getAccessToken("a"));
+        Assertions.assertEquals("b", registry.getAccessToken("b"));
+        Assertions.assertSame(registry.get("a"), registry.get("a"));
+        Assertions.assertEquals(2, created.get());
+        Assertions.assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws InterruptedException {
+        TokenManagerRegistry<String, String> registry =
+                new TokenManagerRegistry<>(key -> new TokenManagerImpl<>(new OpenIDProviderTest(key, null, 60000), 0),
+                        2, 1, TimeUnit.MINUTES);
+
+        AsyncTokenManager<String> a = registry.get("a");
+        Thread.sleep(5);
+        AsyncTokenManager<String> b = registry.get("b");
+        Thread.sleep(5);
+        registry.get("a");
+        Thread.sleep(5);
+        registry.get("c");
+
+        Assertions.assertEquals(2, registry.size());
+        Assertions.assertSame(a, registry.get("a"));
+        Assertions.assertNotSame(b, registry.get("b"));
+    }
+
+    @Test
+    public void testEvictExpired() throws InterruptedException {
+        TokenManagerRegistry<String, String> registry =
+                new TokenManagerRegistry<>(key -> new TokenManagerImpl<>(new OpenIDProviderTest(key, null, 60000), 0),
+                        10, 50, TimeUnit.MILLISECONDS);
+
+        registry.get("a");
+        Thread.sleep(100);
+        registry.cleanUp();
+
+        Assertions.assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testIdleTokenManagerClosedUnderMaximumSize() throws InterruptedException {
+        AtomicInteger closed = new AtomicInteger();
+        TokenManagerRegistry<String, String> registry = new TokenManagerRegistry<>(
+                key -> new TokenManagerImpl<String, String>(new OpenIDProviderTest(key, null, 60000), 0) {
+                    @Override
+                    public void close() {
+                        closed.incrementAndGet();
+                    }
+                }, 10, 50, TimeUnit.MILLISECONDS);
+
+        registry.get("a");
+        for (int i = 0; i < 100 && closed.get() == 0; i++) {
+            Thread.sleep(20);
+        }
+
+        Assertions.assertEquals(1, closed.get());
+        Assertions.assertEquals(0, registry.size());
+        registry.close();
+    }
+
+    @Test
+    public void testSlowFactoryDoesNotBlockOtherKeys() throws Exception {
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TokenManagerRegistry<String, String> registry = new TokenManagerRegistry<>(key -> {
+            if (key.equals("slow")) {
+                creating.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return new TokenManagerImpl<>(new OpenIDProviderTest(key, null, 60000), 0);
+        }, 10, 1, TimeUnit.MINUTES);
+
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> registry.getAccessToken("slow"));
+        Assertions.assertTrue(creating.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            // keys that may share a map bin with the slow one
+            Assertions.assertEquals("k" + i, registry.getAccessToken("k" + i));
+        }
+        Assertions.assertFalse(slow.isDone());
+
+        release.countDown();
+        Assertions.assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(registry.size() <= 10);
+    }
+
+    @Test
+    public void testFactoryFailureNotCached() {
+        AtomicInteger created = new AtomicInteger();
+        TokenManagerRegistry<String, String> registry = new TokenManagerRegistry<>(key -> {
+            if (created.incrementAndGet() == 1) {
+                throw new IllegalStateException("discovery failed");
+            }
+            return new TokenManagerImpl<>(new OpenIDProviderTest(key, null, 60000), 0);
+        }, 10, 1, TimeUnit.MINUTES);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> registry.get("a"));
+        Assertions.assertEquals(0, registry.size());
+        Assertions.assertEquals("a", registry.getAccessToken("a"));
+    }
+
+    @Test
+    public void testCloseTokenManagers() {
+        AtomicInteger closed = new AtomicInteger();
+        AtomicInteger released = new AtomicInteger();
+        TokenManagerRegistry<String, String> registry = new TokenManagerRegistry<>(
+                key -> new TokenManagerImpl<String, String>(new OpenIDProviderTest(key, null, 60000), 0) {
+                    @Override
+                    public void close() {
+                        closed.incrementAndGet();
+                    }
+                }, 10, 1, TimeUnit.MINUTES, released::incrementAndGet);
+
+        registry.get("a");
+        registry.get("b");
+        registry.close();
+
+        Assertions.assertEquals(2, closed.get());
+        Assertions.assertEquals(1, released.get());
+        Assertions.assertEquals(0, registry.size());
+    }
+}
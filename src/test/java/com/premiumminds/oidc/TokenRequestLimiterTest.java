@@ -0,0 +1,93 @@
+package com.premiumminds.oidc;
+
+import com.premiumminds.oidc.TokenManagerImplTest.OpenIDProviderTest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TokenRequestLimiterTest {
+    @Test
+    public void testBurstThenRate() {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(20, 3);
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(limiter.acquireAsync(0, TimeUnit.SECONDS).isDone());
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Void> fourth = limiter.acquireAsync(0, TimeUnit.SECONDS);
+        Assertions.assertFalse(fourth.isDone());
+        Assertions.assertEquals(1, limiter.getQueueLength());
+
+        fourth.join();
+        // one request every 50 milliseconds
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        Assertions.assertEquals(0, limiter.getQueueLength());
+    }
+
+    @Test
+    public void testSoonestExpiryFirst() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            TokenRequestLimiter limiter = new TokenRequestLimiter(50, 1, 0, scheduler);
+            Assertions.assertTrue(limiter.acquireAsync(0, TimeUnit.SECONDS).isDone());
+
+            List<Integer> order = new CopyOnWriteArrayList<>();
+            List<CompletableFuture<Void>> permits = new ArrayList<>();
+            int[] remaining = {30, 10, 20, 0};
+            for (int i = 0; i < remaining.length; i++) {
+                int index = i;
+                permits.add(limiter.acquireAsync(remaining[i], TimeUnit.SECONDS).thenRun(() -> order.add(index)));
+            }
+            CompletableFuture.allOf(permits.toArray(new CompletableFuture[0])).join();
+
+            Assertions.assertEquals(Arrays.asList(3, 1, 2, 0), order);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCancelledWaiterSkipped() {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(20, 1);
+        Assertions.assertTrue(limiter.acquireAsync(0, TimeUnit.SECONDS).isDone());
+
+        CompletableFuture<Void> cancelled = limiter.acquireAsync(0, TimeUnit.SECONDS);
+        CompletableFuture<Void> next = limiter.acquireAsync(1, TimeUnit.SECONDS);
+        cancelled.cancel(false);
+
+        long start = System.nanoTime();
+        next.join();
+        // gets the permit the cancelled request would have used
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(90));
+    }
+
+    @Test
+    public void testTokenManagersShareLimit() throws Exception {
+        TokenRequestLimiter limiter = new TokenRequestLimiter(100, 5);
+        List<TokenManagerImpl<String, String>> tokenManagers = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            tokenManagers.add(new TokenManagerImpl<>(new OpenIDProviderTest("token" + i, null, 60000), 0)
+                    .rateLimiter(limiter));
+        }
+
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> tokens = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            tokens.add(i % 2 == 0 ? tokenManagers.get(i).getAccessTokenAsync()
+                    : CompletableFuture.supplyAsync(tokenManagers.get(i)::getAccessToken));
+        }
+        for (int i = 0; i < 25; i++) {
+            Assertions.assertEquals("token" + i, tokens.get(i).get(5, TimeUnit.SECONDS));
+        }
+
+        // 5 at once, then one every 10 milliseconds
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+}
@@ -0,0 +1,84 @@
+package com.premiumminds.oidc;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Callers waiting for new tokens must not pin the carrier threads of virtual threads. Only runs on Java 21 or later;
+ * virtual threads are created through reflection since the tests are compiled for Java 8.
+ */
+public class VirtualThreadsTest {
+    @Test
+    public void testWaitingVirtualThreadsUnmount() throws Exception {
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        OpenIDProviderTest provider = new OpenIDProviderTest(1000);
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0);
+
+        try {
+            int callers = 5000;
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(virtualThreads.submit(() -> {
+                    start.await();
+                    return tokenManager.getAccessToken();
+                }));
+            }
+            start.countDown();
+            Assertions.assertTrue(provider.requested.await(5, TimeUnit.SECONDS));
+
+            // every caller is blocked on the slow refresh: if they pinned their carriers, nothing else could run
+            Assertions.assertEquals("probe", virtualThreads.submit(() -> "probe").get(500, TimeUnit.MILLISECONDS));
+            Assertions.assertFalse(results.get(0).isDone(), "probe should run while the refresh is in flight");
+
+            for (Future<String> result : results) {
+                Assertions.assertEquals("accessToken", result.get(10, TimeUnit.SECONDS));
+            }
+            Assertions.assertEquals(1, provider.grantTokenCount.get());
+        } finally {
+            virtualThreads.shutdownNow();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws ReflectiveOperationException {
+        Method factory;
+        try {
+            factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            factory = null;
+        }
+        Assumptions.assumeTrue(factory != null, "virtual threads need Java 21 or later");
+        return (ExecutorService) factory.invoke(null);
+    }
+
+    private static class OpenIDProviderTest extends TokenManagerImplTest.OpenIDProviderTest {
+        private final CountDownLatch requested = new CountDownLatch(1);
+
+        private final long delay;
+
+        private OpenIDProviderTest(long delay) {
+            super("accessToken", "refreshToken", 60000); // 1 minute
+            this.delay = delay;
+        }
+
+        @Override
+        public Tokens grantToken() {
+            requested.countDown();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.grantToken();
+        }
+    }
+}
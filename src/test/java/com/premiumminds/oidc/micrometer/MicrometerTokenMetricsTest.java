@@ -0,0 +1,69 @@
+package com.premiumminds.oidc.micrometer;
+
+import com.premiumminds.oidc.OpenIDProvider;
+import com.premiumminds.oidc.TokenManager;
+import com.premiumminds.oidc.TokenManagerImpl;
+import com.premiumminds.oidc.Tokens;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MicrometerTokenMetricsTest {
+    @Test
+    public void testTokenLifecycle() throws InterruptedException {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        FailingRefreshProvider provider = new FailingRefreshProvider();
+        TokenManager<String> tokenManager = new TokenManagerImpl<>(provider, 0)
+                .metrics(new MicrometerTokenMetrics(registry, Tag.of("client", "test")));
+
+        tokenManager.getAccessToken();
+        tokenManager.getAccessToken();
+        tokenManager.getAccessToken();
+
+        Thread.sleep(101);
+        tokenManager.getAccessToken(); // refresh fails, falls back to grant
+
+        Thread.sleep(101);
+        provider.failGrant = true;
+        Assertions.assertThrows(UncheckedIOException.class, tokenManager::getAccessToken);
+
+        Assertions.assertEquals(2, registry.get("oidc.token.cache.hits").tag("client", "test").counter().count());
+        Assertions.assertEquals(3, registry.get("oidc.token.requests").tag("type", "grant").counter().count());
+        Assertions.assertEquals(2, registry.get("oidc.token.requests").tag("type", "refresh").counter().count());
+        Assertions.assertEquals(2, registry.get("oidc.token.refresh.fallbacks").counter().count());
+        Assertions.assertEquals(1, registry.get("oidc.token.errors").tag("cause", "IOException").counter().count());
+        Assertions.assertEquals(3, registry.get("oidc.token.caller.wait").timer().count());
+    }
+
+    @Test
+    public void testExchangesTaggedApart() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerTokenMetrics metrics = new MicrometerTokenMetrics(registry);
+
+        metrics.exchange();
+
+        Assertions.assertEquals(1, registry.get("oidc.token.requests").tag("type", "exchange").counter().count());
+        Assertions.assertEquals(0, registry.get("oidc.token.requests").tag("type", "grant").counter().count());
+    }
+
+    private static class FailingRefreshProvider implements OpenIDProvider<String, String> {
+        private boolean failGrant;
+
+        @Override
+        public Tokens<String, String> refreshToken(String refreshToken) {
+            throw new IllegalStateException("invalid_grant");
+        }
+
+        @Override
+        public Tokens<String, String> grantToken() {
+            if (failGrant) {
+                throw new UncheckedIOException(new IOException("connection refused"));
+            }
+            return new Tokens<>("accessToken", "refreshToken", 100);
+        }
+    }
+}
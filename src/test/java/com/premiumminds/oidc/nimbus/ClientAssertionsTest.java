@@ -0,0 +1,202 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.oauth2.sdk.assertions.jwt.JWTAssertionFactory;
+import com.nimbusds.oauth2.sdk.auth.ClientSecretJWT;
+import com.nimbusds.oauth2.sdk.auth.JWTAuthentication;
+import com.nimbusds.oauth2.sdk.auth.PrivateKeyJWT;
+import com.nimbusds.oauth2.sdk.auth.Secret;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.util.URLUtils;
+import com.premiumminds.oidc.TokenManager;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ClientAssertionsTest {
+    private static final URI TOKEN_ENDPOINT = URI.create("https://provider/token");
+
+    private final ClientID clientID = new ClientID("client");
+
+    private final AtomicInteger signatures = new AtomicInteger();
+
+    private final Deque<Runnable> background = new ArrayDeque<>();
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+
+    private final ClientAssertions.Signer signer = claims -> {
+        signatures.incrementAndGet();
+        return new ClientSecretJWT(
+                JWTAssertionFactory.create(claims, JWSAlgorithm.HS256, new Secret("0123456789abcdef0123456789abcdef")));
+    };
+
+    @Test
+    public void testSignedShortlyBeforeNextRequest() {
+        ClientAssertions assertions = newClientAssertions(false);
+
+        JWTAuthentication first = (JWTAuthentication) assertions.authenticate(TOKEN_ENDPOINT);
+        Assertions.assertEquals(1, signatures.get());
+        Assertions.assertTrue(background.isEmpty(), "should not sign the next one until the tokens are received");
+
+        // tokens for 5 minutes, renewed 5 seconds before they expire
+        assertions.prepare(TOKEN_ENDPOINT, 300000);
+        RunnableScheduledFuture<?> scheduled = nextScheduled();
+        Assertions.assertEquals(290000, scheduled.getDelay(TimeUnit.MILLISECONDS), 1000);
+        now.addAndGet(290000);
+        scheduled.run();
+        background.poll().run();
+        Assertions.assertEquals(2, signatures.get());
+
+        now.addAndGet(5000);
+        JWTAuthentication second = (JWTAuthentication) assertions.authenticate(TOKEN_ENDPOINT);
+        Assertions.assertEquals(2, signatures.get(), "should use the assertion signed in background");
+        Assertions.assertNotEquals(first.getJWTAuthenticationClaimsSet().getJWTID(),
+                second.getJWTAuthenticationClaimsSet().getJWTID());
+        Assertions.assertEquals(clientID, second.getClientID());
+        Assertions.assertEquals(TOKEN_ENDPOINT.toString(),
+                second.getJWTAuthenticationClaimsSet().getAudience().get(0).getValue());
+        Assertions.assertEquals((now.get() - 5000) / 1000,
+                second.getJWTAuthenticationClaimsSet().getIssueTime().getTime() / 1000);
+    }
+
+    @Test
+    public void testStaleAssertionSignedAgain() {
+        ClientAssertions assertions = newClientAssertions(false);
+        assertions.prepare(TOKEN_ENDPOINT, 300000);
+        nextScheduled().run();
+        background.poll().run();
+        Assertions.assertEquals(1, signatures.get());
+
+        // the refresh came much later than expected, the iat of the assertion signed ahead is too old
+        now.addAndGet(120000);
+        JWTAuthentication stale = (JWTAuthentication) assertions.authenticate(TOKEN_ENDPOINT);
+        Assertions.assertEquals(2, signatures.get());
+        Assertions.assertEquals(now.get() / 1000, stale.getJWTAuthenticationClaimsSet().getIssueTime().getTime() / 1000);
+
+        // past the time it can be sent
+        assertions.prepare(TOKEN_ENDPOINT, 300000);
+        nextScheduled().run();
+        background.poll().run();
+        now.addAndGet(300000);
+        JWTAuthentication expired = (JWTAuthentication) assertions.authenticate(TOKEN_ENDPOINT);
+        Assertions.assertEquals(4, signatures.get());
+        Assertions.assertTrue(expired.getJWTAuthenticationClaimsSet().getExpirationTime().getTime() > now.get());
+    }
+
+    @Test
+    public void testReused() {
+        ClientAssertions assertions = newClientAssertions(true);
+
+        JWTAuthentication first = (JWTAuthentication) assertions.authenticate(TOKEN_ENDPOINT);
+        JWTAuthentication second = (JWTAuthentication) assertions.authenticate(TOKEN_ENDPOINT);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, signatures.get());
+        Assertions.assertTrue(background.isEmpty());
+
+        assertions.prepare(TOKEN_ENDPOINT, 300000);
+        Assertions.assertTrue(scheduler.getQueue().isEmpty(), "reused assertions are renewed at half their lifetime");
+    }
+
+    @Test
+    public void testTokenEndpointChanged() {
+        ClientAssertions assertions = newClientAssertions(true);
+
+        assertions.authenticate(TOKEN_ENDPOINT);
+        JWTAuthentication other = (JWTAuthentication) assertions.authenticate(URI.create("https://other/token"));
+
+        Assertions.assertEquals(2, signatures.get());
+        Assertions.assertEquals("https://other/token",
+                other.getJWTAuthenticationClaimsSet().getAudience().get(0).getValue());
+    }
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testPrivateKeyJWT() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        AtomicReference<String> form = new AtomicReference<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/token", exchange -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[1024];
+                for (int read; (read = in.read(buffer)) != -1; ) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            form.set(new String(body.toByteArray(), StandardCharsets.UTF_8));
+            byte[] response = "{\"access_token\":\"token\",\"token_type\":\"Bearer\",\"expires_in\":60}"
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        try {
+            URI tokenEndpoint = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/token");
+            TokenManager<BearerAccessToken> tokenManager = new NimbusOIDCTokenManagerBuilder(tokenEndpoint, clientID)
+                    .privateKeyJWT(keyPair.getPrivate(), JWSAlgorithm.RS256, "key1")
+                    .build();
+
+            Assertions.assertEquals("token", tokenManager.getAccessToken().getValue());
+
+            Map<String, List<String>> params = URLUtils.parseParameters(form.get());
+            PrivateKeyJWT assertion = PrivateKeyJWT.parse(params);
+            Assertions.assertEquals(clientID, assertion.getClientID());
+            Assertions.assertEquals("key1", assertion.getClientAssertion().getHeader().getKeyID());
+            Assertions.assertTrue(
+                    assertion.getClientAssertion().verify(new RSASSAVerifier((RSAPublicKey) keyPair.getPublic())));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private ClientAssertions newClientAssertions(boolean reuse) {
+        return new ClientAssertions(clientID, signer, 300000, reuse, background::add, expiresIn -> expiresIn - 5000,
+                scheduler, now::get);
+    }
+
+    /**
+     * Take the next task from the scheduler, to run it at the time of the fake clock
+     */
+    private RunnableScheduledFuture<?> nextScheduled() {
+        RunnableScheduledFuture<?> scheduled = (RunnableScheduledFuture<?>) scheduler.getQueue().peek();
+        Assertions.assertNotNull(scheduled);
+        scheduler.remove(scheduled);
+        return scheduled;
+    }
+}
@@ -0,0 +1,225 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Token endpoint on a local {@link HttpServer}, with configurable latency, error rate, token lifetime and refresh
+ * token rotation, to test the token managers over real HTTP.
+ */
+public class FakeTokenEndpoint implements AutoCloseable {
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final AtomicInteger tokens = new AtomicInteger();
+
+    private final AtomicInteger grants = new AtomicInteger();
+
+    private final AtomicInteger refreshes = new AtomicInteger();
+
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+
+    private final AtomicInteger rejectedRefreshTokens = new AtomicInteger();
+
+    private final Set<String> validRefreshTokens = ConcurrentHashMap.newKeySet();
+
+    private volatile long latency; // milliseconds
+
+    private volatile double errorRate;
+
+    private volatile long lifetime = 60; // seconds, -1 for no expires_in
+
+    private volatile boolean refreshTokens;
+
+    private volatile boolean rotateRefreshTokens;
+
+    private volatile Map<String, String> lastRequest;
+
+    public FakeTokenEndpoint() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/token", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Delay every response
+     */
+    public FakeTokenEndpoint latency(long latency, TimeUnit unit) {
+        this.latency = unit.toMillis(latency);
+        return this;
+    }
+
+    /**
+     * Answer a fraction of the requests with 503 {@code temporarily_unavailable}
+     */
+    public FakeTokenEndpoint errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Lifetime of the access tokens, in whole seconds
+     */
+    public FakeTokenEndpoint lifetime(long lifetime, TimeUnit unit) {
+        this.lifetime = Math.max(unit.toSeconds(lifetime), 1);
+        return this;
+    }
+
+    /**
+     * Leave {@code expires_in} out of the responses, with opaque access tokens
+     */
+    public FakeTokenEndpoint withoutLifetime() {
+        this.lifetime = -1;
+        return this;
+    }
+
+    /**
+     * Issue refresh tokens. With rotation, each refresh token can be used once: using it again gets
+     * {@code invalid_grant}.
+     */
+    public FakeTokenEndpoint refreshTokens(boolean rotate) {
+        this.refreshTokens = true;
+        this.rotateRefreshTokens = rotate;
+        return this;
+    }
+
+    public URI getTokenEndpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/token");
+    }
+
+    public int getGrants() {
+        return grants.get();
+    }
+
+    public int getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * @return grants plus refreshes, including the ones answered with an injected error
+     */
+    public int getRequests() {
+        return grants.get() + refreshes.get();
+    }
+
+    /**
+     * @return form parameters of the last request
+     */
+    public Map<String, String> getLastRequest() {
+        return lastRequest;
+    }
+
+    public int getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public int getRejectedRefreshTokens() {
+        return rejectedRefreshTokens.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> form = readForm(exchange);
+        lastRequest = form;
+        boolean refresh = "refresh_token".equals(form.get("grant_type"));
+        (refresh ? refreshes : grants).incrementAndGet();
+
+        long delay = latency;
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            respond(exchange, 503, "{\"error\":\"temporarily_unavailable\"}");
+            return;
+        }
+
+        String refreshToken = null;
+        if (refresh) {
+            String presented = form.get("refresh_token");
+            boolean valid = rotateRefreshTokens ? validRefreshTokens.remove(presented)
+                    : validRefreshTokens.contains(presented);
+            if (!valid) {
+                rejectedRefreshTokens.incrementAndGet();
+                respond(exchange, 400, "{\"error\":\"invalid_grant\"}");
+                return;
+            }
+            refreshToken = rotateRefreshTokens ? null : presented;
+        }
+
+        int id = tokens.incrementAndGet();
+        StringBuilder body = new StringBuilder("{\"access_token\":\"access-").append(id)
+                .append("\",\"token_type\":\"Bearer\"");
+        if (lifetime >= 0) {
+            body.append(",\"expires_in\":").append(lifetime);
+        }
+        if (refreshTokens) {
+            if (refreshToken == null) {
+                refreshToken = "refresh-" + id;
+                validRefreshTokens.add(refreshToken);
+            }
+            body.append(",\"refresh_token\":\"").append(refreshToken).append('"');
+        }
+        respond(exchange, 200, body.append('}').toString());
+    }
+
+    private static Map<String, String> readForm(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+        }
+        Map<String, String> form = new HashMap<>();
+        for (String pair : new String(content.toByteArray(), StandardCharsets.UTF_8).split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return form;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
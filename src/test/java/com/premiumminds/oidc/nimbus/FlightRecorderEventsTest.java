@@ -0,0 +1,66 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.premiumminds.oidc.TokenEvents;
+import com.premiumminds.oidc.TokenManager;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FlightRecorderEventsTest {
+    @Test
+    public void testEventsRecorded() throws Exception {
+        Assertions.assertNotSame(TokenEvents.NOOP, TokenEvents.get());
+
+        Path file = Files.createTempFile("oidc-token-manager", ".jfr");
+        try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint().refreshTokens(false);
+                Recording recording = new Recording()) {
+            recording.enable("com.premiumminds.oidc.TokenRequest");
+            recording.enable("com.premiumminds.oidc.EndpointRequest");
+            recording.enable("com.premiumminds.oidc.CallerWait");
+            recording.start();
+
+            TokenManager<BearerAccessToken> tokenManager =
+                    new NimbusOIDCTokenManagerBuilder(endpoint.getTokenEndpoint(), "client")
+                            .clientSecret("secret")
+                            .build();
+            BearerAccessToken accessToken = tokenManager.getAccessToken();
+            tokenManager.invalidate(accessToken);
+            tokenManager.getAccessToken();
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        List<RecordedEvent> tokenRequests = ofType(events, "com.premiumminds.oidc.TokenRequest");
+        Assertions.assertEquals(2, tokenRequests.size());
+        Assertions.assertFalse(tokenRequests.get(0).getBoolean("refresh"));
+        Assertions.assertTrue(tokenRequests.get(1).getBoolean("refresh"));
+        Assertions.assertEquals("success", tokenRequests.get(1).getString("outcome"));
+
+        List<RecordedEvent> endpointRequests = ofType(events, "com.premiumminds.oidc.EndpointRequest");
+        Assertions.assertEquals(2, endpointRequests.size());
+        Assertions.assertTrue(endpointRequests.get(0).getString("endpoint").endsWith("/token"));
+        Assertions.assertEquals("client_credentials", endpointRequests.get(0).getString("grantType"));
+        Assertions.assertEquals("refresh_token", endpointRequests.get(1).getString("grantType"));
+        Assertions.assertTrue(endpointRequests.get(0).getDuration().toNanos() > 0);
+
+        Assertions.assertEquals(2, ofType(events, "com.premiumminds.oidc.CallerWait").size());
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String type) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(type))
+                .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                .collect(Collectors.toList());
+    }
+}
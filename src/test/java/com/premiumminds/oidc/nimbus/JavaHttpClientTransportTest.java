@@ -0,0 +1,110 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.ClientCredentialsGrant;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
+import com.nimbusds.oauth2.sdk.auth.Secret;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.RefreshToken;
+import com.premiumminds.oidc.TokenMetrics;
+import com.premiumminds.oidc.Tokens;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class JavaHttpClientTransportTest {
+    private HttpServer server;
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/token", exchange -> {
+            requests.incrementAndGet();
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() != -1) {
+                    // drain the request so the connection can be reused
+                }
+            }
+            byte[] body = ("{\"access_token\":\"token" + requests.get()
+                    + "\",\"token_type\":\"Bearer\",\"expires_in\":60}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConnectionReused() {
+        JavaHttpClientTransport transport = new JavaHttpClientTransport();
+        OpenIDProviderImpl provider = newProvider(transport);
+
+        for (int i = 1; i <= 5; i++) {
+            Tokens<BearerAccessToken, RefreshToken> tokens = provider.grantToken();
+            Assertions.assertEquals("token" + i, tokens.getAccessToken().getValue());
+            Assertions.assertEquals(60000, tokens.getExpiresIn());
+        }
+
+        Assertions.assertEquals(5, requests.get());
+        Assertions.assertEquals(1, clientPorts.size(), "all requests should use the same connection");
+    }
+
+    @Test
+    public void testConnectionSharedBetweenProviders() throws Exception {
+        JavaHttpClientTransport transport = new JavaHttpClientTransport();
+
+        newProvider(transport).grantToken();
+        newProvider(transport).grantTokenAsync().get();
+        newProvider(transport).grantToken();
+
+        Assertions.assertEquals(3, requests.get());
+        Assertions.assertEquals(1, clientPorts.size(), "all requests should use the same connection");
+    }
+
+    @Test
+    public void testConnectionProblem() {
+        JavaHttpClientTransport transport = new JavaHttpClientTransport();
+        OpenIDProviderImpl provider = newProvider(transport);
+        server.stop(0);
+
+        OIDCProviderRequestException e =
+                Assertions.assertThrows(OIDCProviderRequestException.class, provider::grantToken);
+        Assertions.assertTrue(e.getCause() instanceof IOException);
+    }
+
+    private OpenIDProviderImpl newProvider(TokenEndpointTransport transport) {
+        URI tokenEndpoint = URI.create("http://localhost:" + server.getAddress().getPort() + "/token");
+        ClientID clientID = new ClientID("client");
+        return new OpenIDProviderImpl(() -> tokenEndpoint, clientID,
+                ClientAuthenticator.of(new ClientSecretBasic(clientID, new Secret("secret"))),
+                new ClientCredentialsGrant(), new Scope(), null, 5000, 5000,
+                Collections.emptyMap(), transport, ForkJoinPool.commonPool(), TokenMetrics.NOOP, false, 0, 60000);
+    }
+}
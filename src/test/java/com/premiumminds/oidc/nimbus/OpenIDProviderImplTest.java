@@ -0,0 +1,208 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
+import com.nimbusds.oauth2.sdk.ClientCredentialsGrant;
+import com.nimbusds.oauth2.sdk.OAuth2Error;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
+import com.nimbusds.oauth2.sdk.auth.Secret;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.premiumminds.oidc.ProviderErrorKind;
+import com.premiumminds.oidc.TokenManager;
+import com.premiumminds.oidc.TokenMetrics;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class OpenIDProviderImplTest {
+    @Test
+    public void testExpiresIn() {
+        Assertions.assertEquals(60000, expiresIn(new BearerAccessToken("token", 60, null)));
+    }
+
+    @Test
+    public void testExpiresInFromJWT() {
+        // issued by a provider with a clock one hour ahead of ours
+        long issuedAt = System.currentTimeMillis() + 3600000;
+        String jwt = new PlainJWT(new JWTClaimsSet.Builder()
+                .issueTime(new Date(issuedAt))
+                .expirationTime(new Date(issuedAt + 300000))
+                .build()).serialize();
+
+        Assertions.assertEquals(300000, expiresIn(new BearerAccessToken(jwt)));
+    }
+
+    @Test
+    public void testExpiresInFromJWTWithoutIssueTime() {
+        long receivedAt = System.currentTimeMillis() / 1000 * 1000; // JWT times are in seconds
+        String jwt = new PlainJWT(new JWTClaimsSet.Builder()
+                .expirationTime(new Date(receivedAt + 300000))
+                .build()).serialize();
+
+        // counted from when the response was received, less the clock skew
+        Assertions.assertEquals(240000,
+                OpenIDProviderImpl.expiresIn(new BearerAccessToken(jwt), receivedAt, 60000, 0));
+        Assertions.assertEquals(0, OpenIDProviderImpl.expiresIn(new BearerAccessToken(jwt), receivedAt, 400000, 0));
+    }
+
+    @Test
+    public void testExpiresInUnknown() {
+        String jwt = new PlainJWT(new JWTClaimsSet.Builder().subject("client").build()).serialize();
+
+        Assertions.assertEquals(0, expiresIn(new BearerAccessToken(jwt)));
+        Assertions.assertEquals(0, expiresIn(new BearerAccessToken("opaque")));
+        Assertions.assertEquals(120000,
+                OpenIDProviderImpl.expiresIn(new BearerAccessToken("opaque"), System.currentTimeMillis(), 60000,
+                        120000));
+    }
+
+    @Test
+    public void testOpaqueTokenWithoutLifetimeNotCachedForever() throws Exception {
+        try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint().withoutLifetime()) {
+            TokenManager<BearerAccessToken> tokenManager =
+                    new NimbusOIDCTokenManagerBuilder(endpoint.getTokenEndpoint(), "client")
+                            .clientSecret("secret")
+                            .build();
+            tokenManager.getAccessToken();
+            tokenManager.getAccessToken();
+            Assertions.assertEquals(1, endpoint.getRequests());
+
+            TokenManager<BearerAccessToken> withoutDefault =
+                    new NimbusOIDCTokenManagerBuilder(endpoint.getTokenEndpoint(), "client")
+                            .clientSecret("secret")
+                            .defaultTokenLifetime(0, TimeUnit.MINUTES)
+                            .build();
+            withoutDefault.getAccessToken();
+            withoutDefault.getAccessToken();
+            Assertions.assertEquals(3, endpoint.getRequests());
+        }
+    }
+
+    private static long expiresIn(BearerAccessToken accessToken) {
+        return OpenIDProviderImpl.expiresIn(accessToken, System.currentTimeMillis(), 60000, 0);
+    }
+
+    @Test
+    public void testErrorKind() {
+        Assertions.assertEquals(ProviderErrorKind.INVALID_GRANT,
+                OpenIDProviderImpl.kind(OAuth2Error.INVALID_GRANT, 400));
+        Assertions.assertEquals(ProviderErrorKind.INVALID_CLIENT,
+                OpenIDProviderImpl.kind(OAuth2Error.INVALID_CLIENT, 401));
+        Assertions.assertEquals(ProviderErrorKind.SERVER_ERROR,
+                OpenIDProviderImpl.kind(OAuth2Error.SERVER_ERROR, 500));
+        Assertions.assertEquals(ProviderErrorKind.SERVER_ERROR,
+                OpenIDProviderImpl.kind(OAuth2Error.TEMPORARILY_UNAVAILABLE, 503));
+        Assertions.assertEquals(ProviderErrorKind.OTHER,
+                OpenIDProviderImpl.kind(OAuth2Error.INVALID_SCOPE, 400));
+    }
+
+    @Test
+    public void testReadTimeoutNotRetried() throws Exception {
+        try (FakeTokenEndpoint slow = new FakeTokenEndpoint().latency(2, TimeUnit.SECONDS)) {
+            TokenManager<BearerAccessToken> tokenManager =
+                    new NimbusOIDCTokenManagerBuilder(slow.getTokenEndpoint(), "client")
+                            .clientSecret("secret")
+                            .readTimeout(500, TimeUnit.MILLISECONDS)
+                            .build();
+
+            long start = System.nanoTime();
+            Assertions.assertThrows(RuntimeException.class, tokenManager::getAccessToken);
+            long elapsed = System.nanoTime() - start;
+            Assertions.assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(1500), "waited " + elapsed + "ns");
+            Assertions.assertEquals(1, slow.getRequests());
+        }
+    }
+
+    @Test
+    public void testConnectionRefused() throws Exception {
+        URI tokenEndpoint;
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            tokenEndpoint = URI.create("http://localhost:" + server.getLocalPort() + "/token");
+        }
+
+        OIDCProviderRequestException e = Assertions.assertThrows(OIDCProviderRequestException.class,
+                newProvider(tokenEndpoint)::grantToken);
+        Assertions.assertEquals(ProviderErrorKind.CONNECTION, e.getKind());
+    }
+
+    @Test
+    public void testConnectionResetAfterRequest() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread resetting = new Thread(() -> {
+                // every connection, since HttpURLConnection sends a POST again once when the connection is reset
+                while (!server.isClosed()) {
+                    try (Socket socket = server.accept()) {
+                        readRequest(socket);
+                        // reset instead of answering
+                        socket.setSoLinger(true, 0);
+                    } catch (Exception e) {
+                        // closed by the test
+                    }
+                }
+            });
+            resetting.setDaemon(true);
+            resetting.start();
+            URI tokenEndpoint = URI.create("http://localhost:" + server.getLocalPort() + "/token");
+
+            OIDCProviderRequestException e = Assertions.assertThrows(OIDCProviderRequestException.class,
+                    newProvider(tokenEndpoint)::grantToken);
+            Assertions.assertEquals(ProviderErrorKind.CONNECTION_LOST, e.getKind());
+        }
+    }
+
+    @Test
+    public void testAdditionalTokenEndpointHedged() throws Exception {
+        try (FakeTokenEndpoint slow = new FakeTokenEndpoint().latency(2, TimeUnit.SECONDS);
+                FakeTokenEndpoint fast = new FakeTokenEndpoint()) {
+            TokenManager<BearerAccessToken> tokenManager =
+                    new NimbusOIDCTokenManagerBuilder(slow.getTokenEndpoint(), "client")
+                            .clientSecret("secret")
+                            .additionalTokenEndpoints(fast.getTokenEndpoint())
+                            .hedgeDelay(100, TimeUnit.MILLISECONDS)
+                            .build();
+
+            long start = System.nanoTime();
+            Assertions.assertNotNull(tokenManager.getAccessToken());
+            Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+            Assertions.assertEquals(1, fast.getGrants());
+        }
+    }
+
+    private static OpenIDProviderImpl newProvider(URI tokenEndpoint) {
+        ClientID clientID = new ClientID("client");
+        return new OpenIDProviderImpl(() -> tokenEndpoint, clientID,
+                ClientAuthenticator.of(new ClientSecretBasic(clientID, new Secret("secret"))),
+                new ClientCredentialsGrant(), new Scope(), null, 5000, 5000, Collections.emptyMap(),
+                new HttpURLConnectionTransport(), ForkJoinPool.commonPool(), TokenMetrics.NOOP, false, 0, 60000);
+    }
+
+    /**
+     * Read the request headers and body, so the whole request was received
+     */
+    private static void readRequest(Socket socket) throws Exception {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        int contentLength = 0;
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+        }
+        for (int i = 0; i < contentLength; i++) {
+            in.read();
+        }
+    }
+}
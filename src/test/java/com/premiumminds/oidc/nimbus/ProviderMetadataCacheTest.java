@@ -0,0 +1,151 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.id.Issuer;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.premiumminds.oidc.TokenManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ProviderMetadataCacheTest {
+    private HttpServer server;
+
+    private String issuer;
+
+    private final AtomicInteger discoveryRequests = new AtomicInteger();
+
+    private volatile boolean failDiscovery;
+
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        issuer = "http://127.0.0.1:" + server.getAddress().getPort();
+        server.createContext("/.well-known/openid-configuration", exchange -> {
+            discoveryRequests.incrementAndGet();
+            if (failDiscovery) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("Cache-Control", "public, max-age=3600");
+            respond(exchange, "{\"issuer\":\"" + issuer + "\",\"token_endpoint\":\"" + issuer + "/token\","
+                    + "\"jwks_uri\":\"" + issuer + "/jwks\",\"subject_types_supported\":[\"public\"],"
+                    + "\"response_types_supported\":[\"code\"]}");
+        });
+        server.createContext("/token", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() != -1) {
+                    // drain the request
+                }
+            }
+            respond(exchange, "{\"access_token\":\"token\",\"token_type\":\"Bearer\",\"expires_in\":60}");
+        });
+        server.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        scheduler.shutdownNow();
+        server.stop(0);
+    }
+
+    @Test
+    public void testLoadedOnce() {
+        ProviderMetadataCache cache =
+                new ProviderMetadataCache(new Issuer(issuer), new HttpURLConnectionTransport(), scheduler);
+
+        Assertions.assertEquals(URI.create(issuer + "/token"), cache.getTokenEndpointURI());
+        Assertions.assertEquals(URI.create(issuer + "/token"), cache.getTokenEndpointURI());
+        Assertions.assertEquals(1, discoveryRequests.get());
+    }
+
+    @Test
+    public void testServesLastGoodMetadata() {
+        ProviderMetadataCache cache =
+                new ProviderMetadataCache(new Issuer(issuer), new HttpURLConnectionTransport(), scheduler);
+        cache.getMetadata();
+
+        failDiscovery = true;
+        Assertions.assertThrows(OIDCProviderRequestException.class, cache::load);
+
+        Assertions.assertEquals(URI.create(issuer + "/token"), cache.getTokenEndpointURI());
+        Assertions.assertEquals(2, discoveryRequests.get());
+    }
+
+    @Test
+    public void testFirstLoadFails() {
+        failDiscovery = true;
+        ProviderMetadataCache cache =
+                new ProviderMetadataCache(new Issuer(issuer), new HttpURLConnectionTransport(), scheduler);
+
+        Assertions.assertThrows(OIDCProviderRequestException.class, cache::getMetadata);
+
+        failDiscovery = false;
+        Assertions.assertEquals(URI.create(issuer + "/token"), cache.getTokenEndpointURI());
+    }
+
+    @Test
+    public void testDiscoveryUsesBuilderTransport() {
+        AtomicInteger sent = new AtomicInteger();
+        TokenEndpointTransport transport = request -> {
+            sent.incrementAndGet();
+            return request.send();
+        };
+        TokenManager<BearerAccessToken> tokenManager =
+                new NimbusOIDCTokenManagerBuilder(new Issuer(issuer), "client_id").clientSecret("secret")
+                        .transport(transport)
+                        .build();
+
+        Assertions.assertEquals("token", tokenManager.getAccessToken().getValue());
+        // the discovery document and the token request
+        Assertions.assertEquals(2, sent.get());
+        Assertions.assertEquals(1, discoveryRequests.get());
+    }
+
+    @Test
+    public void testBuildersShareMetadata() throws Exception {
+        TokenManager<BearerAccessToken> tokenManager =
+                new NimbusOIDCTokenManagerBuilder(new Issuer(issuer), "client_id").clientSecret("secret").build();
+        TokenManager<BearerAccessToken> otherTokenManager =
+                new NimbusOIDCTokenManagerBuilder(new Issuer(issuer), "other_client_id").clientSecret("secret")
+                        .build();
+
+        Assertions.assertEquals("token", tokenManager.getAccessToken().getValue());
+        Assertions.assertEquals("token", otherTokenManager.getAccessToken().getValue());
+        Assertions.assertEquals(1, discoveryRequests.get());
+    }
+
+    @Test
+    public void testMaxAge() {
+        Assertions.assertEquals(3600000, ProviderMetadataCache.maxAge(null));
+        Assertions.assertEquals(600000, ProviderMetadataCache.maxAge("public, max-age=600"));
+        Assertions.assertEquals(60000, ProviderMetadataCache.maxAge("max-age=5"));
+        Assertions.assertEquals(86400000, ProviderMetadataCache.maxAge("max-age=31536000"));
+        Assertions.assertEquals(60000, ProviderMetadataCache.maxAge("no-cache"));
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.premiumminds.oidc.TokenManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Drives token managers from many threads against a {@link FakeTokenEndpoint} for a while, and reports how many
+ * requests reached the endpoint for each token expiry, how long callers waited and how many got errors. A token
+ * manager that calls the endpoint more often than its tokens expire has a refresh amplification problem.
+ */
+public class SoakHarness {
+    private final FakeTokenEndpoint endpoint;
+
+    private final IntFunction<TokenManager<BearerAccessToken>> factory;
+
+    private int threads = 16;
+
+    private int managers = 1;
+
+    private long duration = TimeUnit.SECONDS.toNanos(10);
+
+    private long pause = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * @param endpoint
+     *         token endpoint the token managers use
+     * @param factory
+     *         creates the token manager with the given index
+     */
+    public SoakHarness(FakeTokenEndpoint endpoint, IntFunction<TokenManager<BearerAccessToken>> factory) {
+        this.endpoint = endpoint;
+        this.factory = factory;
+    }
+
+    /**
+     * Number of caller threads, spread over the token managers
+     */
+    public SoakHarness threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Number of token managers, each with its own tokens
+     */
+    public SoakHarness managers(int managers) {
+        this.managers = managers;
+        return this;
+    }
+
+    public SoakHarness duration(long duration, TimeUnit unit) {
+        this.duration = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Pause of each caller between calls, so the callers don't just spin on the cached token
+     */
+    public SoakHarness pause(long pause, TimeUnit unit) {
+        this.pause = unit.toNanos(pause);
+        return this;
+    }
+
+    /**
+     * Run the callers until the duration passes
+     *
+     * @param lifetime
+     *         lifetime of the tokens issued by the endpoint, to count the expiries
+     * @param unit
+     *         time unit of the lifetime
+     * @return the report
+     */
+    public Report run(long lifetime, TimeUnit unit) throws InterruptedException {
+        List<TokenManager<BearerAccessToken>> tokenManagers = new ArrayList<>();
+        for (int i = 0; i < managers; i++) {
+            tokenManagers.add(factory.apply(i));
+        }
+        int requestsBefore = endpoint.getRequests();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Caller> callers = new ArrayList<>();
+        List<Thread> callerThreads = new ArrayList<>();
+        AtomicReference<Throwable> unexpected = new AtomicReference<>();
+        for (int i = 0; i < threads; i++) {
+            Caller caller = new Caller(tokenManagers.get(i % managers), start);
+            callers.add(caller);
+            Thread thread = new Thread(caller, "soak-caller-" + i);
+            thread.setUncaughtExceptionHandler((t, e) -> unexpected.set(e));
+            callerThreads.add(thread);
+            thread.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(duration));
+        for (Caller caller : callers) {
+            caller.running = false;
+        }
+        for (Thread thread : callerThreads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        tokenManagers.forEach(TokenManager::close);
+        if (unexpected.get() != null) {
+            throw new IllegalStateException("caller failed", unexpected.get());
+        }
+
+        Histogram waits = new Histogram();
+        long calls = 0;
+        long errors = 0;
+        for (Caller caller : callers) {
+            waits.add(caller.waits);
+            calls += caller.calls;
+            errors += caller.errors;
+        }
+        double expiries = managers * (double) elapsed / unit.toNanos(lifetime);
+        return new Report(calls, errors, endpoint.getRequests() - requestsBefore, expiries, waits);
+    }
+
+    private final class Caller implements Runnable {
+        private final TokenManager<BearerAccessToken> tokenManager;
+
+        private final CountDownLatch start;
+
+        private final Histogram waits = new Histogram();
+
+        private volatile boolean running = true;
+
+        private long calls;
+
+        private long errors;
+
+        private Caller(TokenManager<BearerAccessToken> tokenManager, CountDownLatch start) {
+            this.tokenManager = tokenManager;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (running) {
+                long begin = System.nanoTime();
+                try {
+                    tokenManager.getAccessToken();
+                } catch (RuntimeException e) {
+                    errors++;
+                }
+                waits.record(System.nanoTime() - begin);
+                calls++;
+                if (pause > 0) {
+                    LockSupport.parkNanos(pause);
+                }
+            }
+        }
+    }
+
+    /**
+     * Outcome of a run
+     */
+    public static final class Report {
+        private final long calls;
+
+        private final long errors;
+
+        private final int endpointRequests;
+
+        private final double expiries;
+
+        private final Histogram waits;
+
+        private Report(long calls, long errors, int endpointRequests, double expiries, Histogram waits) {
+            this.calls = calls;
+            this.errors = errors;
+            this.endpointRequests = endpointRequests;
+            this.expiries = expiries;
+            this.waits = waits;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public double getErrorRate() {
+            return calls == 0 ? 0 : (double) errors / calls;
+        }
+
+        /**
+         * @return requests to the token endpoint for each token lifetime that passed, per token manager. Renewing
+         *         the tokens ahead of the expiry, and the first fetch, make it a bit more than 1.
+         */
+        public double getRequestsPerExpiry() {
+            return endpointRequests / expiries;
+        }
+
+        /**
+         * @return percentile of the time callers waited for the access token, in nanoseconds
+         */
+        public long getWaitPercentile(double percentile) {
+            return waits.percentile(percentile);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "calls=%d errors=%d (%.4f%%) endpoint requests=%d (%.2f per expiry) "
+                            + "wait p50=%dus p99=%dus p99.9=%dus max=%dus", calls, errors, getErrorRate() * 100,
+                    endpointRequests, getRequestsPerExpiry(), micros(0.5), micros(0.99), micros(0.999), micros(1));
+        }
+
+        private long micros(double percentile) {
+            return TimeUnit.NANOSECONDS.toMicros(waits.percentile(percentile));
+        }
+    }
+
+    /**
+     * Log-linear histogram of durations, 4 buckets for each power of two, so recording never allocates
+     */
+    static final class Histogram {
+        private static final int SUB_BUCKETS = 4;
+
+        private final long[] counts = new long[64 * SUB_BUCKETS];
+
+        private long total;
+
+        void record(long nanos) {
+            counts[index(Math.max(nanos, 1))]++;
+            total++;
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+        }
+
+        /**
+         * @return upper bound of the bucket with the percentile
+         */
+        long percentile(double percentile) {
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        private static int index(long nanos) {
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            if (exponent < 2) {
+                return (int) nanos;
+            }
+            int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return exponent * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int index) {
+            int exponent = index / SUB_BUCKETS;
+            if (exponent < 2) {
+                return index;
+            }
+            int sub = index % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.premiumminds.oidc.nimbus;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Short runs of the {@link SoakHarness} that catch refresh amplification. For a longer run, reporting more
+ * configurations:
+ * <pre>
+ *     mvn test -Dtest=SoakTest -Dsoak.duration=300
+ * </pre>
+ */
+public class SoakTest {
+    @Test
+    public void testNoRefreshAmplification() throws Exception {
+        try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint()
+                .latency(50, TimeUnit.MILLISECONDS)
+                .lifetime(1, TimeUnit.SECONDS)) {
+            SoakHarness.Report report = new SoakHarness(endpoint, i -> builder(endpoint, i).build())
+                    .threads(32)
+                    .managers(4)
+                    .duration(3, TimeUnit.SECONDS)
+                    .run(1, TimeUnit.SECONDS);
+
+            Assertions.assertTrue(report.getCalls() > 0);
+            Assertions.assertEquals(0, report.getErrorRate());
+            // one fetch for each expiry, renewing 200ms early, plus the first fetch
+            Assertions.assertTrue(report.getRequestsPerExpiry() < 2, report.toString());
+        }
+    }
+
+    @Test
+    public void testRotatedRefreshTokensNeverReused() throws Exception {
+        try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint()
+                .latency(20, TimeUnit.MILLISECONDS)
+                .errorRate(0.2)
+                .lifetime(1, TimeUnit.SECONDS)
+                .refreshTokens(true)) {
+            SoakHarness.Report report = new SoakHarness(endpoint, i -> builder(endpoint, i).build())
+                    .threads(32)
+                    .managers(4)
+                    .duration(3, TimeUnit.SECONDS)
+                    .run(1, TimeUnit.SECONDS);
+
+            Assertions.assertTrue(endpoint.getRefreshes() > 0);
+            Assertions.assertEquals(0, endpoint.getRejectedRefreshTokens(), report.toString());
+            // failed requests are retried once: no storm of requests while the endpoint is failing
+            Assertions.assertTrue(report.getRequestsPerExpiry() < 4, report.toString());
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "soak.duration", matches = "\\d+")
+    public void testSoak() throws Exception {
+        long duration = Long.parseLong(System.getProperty("soak.duration"));
+        for (double errorRate : new double[] {0, 0.05, 0.5}) {
+            for (boolean backgroundRefresh : new boolean[] {false, true}) {
+                try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint()
+                        .latency(100, TimeUnit.MILLISECONDS)
+                        .errorRate(errorRate)
+                        .lifetime(5, TimeUnit.SECONDS)
+                        .refreshTokens(true)) {
+                    SoakHarness.Report report = new SoakHarness(endpoint, i -> {
+                        NimbusOIDCTokenManagerBuilder builder = builder(endpoint, i);
+                        return backgroundRefresh ? builder.backgroundRefresh().build() : builder.build();
+                    })
+                            .threads(64)
+                            .managers(16)
+                            .duration(duration, TimeUnit.SECONDS)
+                            .run(5, TimeUnit.SECONDS);
+                    System.out.println("errorRate=" + errorRate + " backgroundRefresh=" + backgroundRefresh + " "
+                            + report);
+                }
+            }
+        }
+    }
+
+    private static NimbusOIDCTokenManagerBuilder builder(FakeTokenEndpoint endpoint, int index) {
+        return new NimbusOIDCTokenManagerBuilder(endpoint.getTokenEndpoint(), "client-" + index)
+                .clientSecret("secret")
+                .expireThreshold(200);
+    }
+}
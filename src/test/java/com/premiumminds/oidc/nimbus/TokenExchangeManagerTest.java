@@ -0,0 +1,120 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.premiumminds.oidc.FakeTokenClock;
+import com.premiumminds.oidc.TokenMetrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TokenExchangeManagerTest {
+    @Test
+    public void testCachedBySubjectAndAudience() throws Exception {
+        try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint()) {
+            TokenExchangeManager exchange = new NimbusOIDCTokenManagerBuilder(endpoint.getTokenEndpoint(), "client")
+                    .clientSecret("secret")
+                    .buildTokenExchange(100);
+
+            BearerAccessToken orders = exchange.exchange("user-token", "orders");
+            Assertions.assertEquals("urn:ietf:params:oauth:grant-type:token-exchange",
+                    endpoint.getLastRequest().get("grant_type"));
+            Assertions.assertEquals("user-token", endpoint.getLastRequest().get("subject_token"));
+            Assertions.assertEquals("urn:ietf:params:oauth:token-type:access_token",
+                    endpoint.getLastRequest().get("subject_token_type"));
+            Assertions.assertEquals("orders", endpoint.getLastRequest().get("audience"));
+
+            Assertions.assertSame(orders, exchange.exchange("user-token", "orders"));
+            Assertions.assertNotEquals(orders, exchange.exchange("user-token", "billing"));
+            Assertions.assertNotEquals(orders, exchange.exchange("other-user-token", "orders"));
+            Assertions.assertEquals(3, endpoint.getGrants());
+        }
+    }
+
+    @Test
+    public void testExchangesCountedApartFromGrants() throws Exception {
+        AtomicInteger grants = new AtomicInteger();
+        AtomicInteger exchanges = new AtomicInteger();
+        try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint()) {
+            TokenExchangeManager exchange = new NimbusOIDCTokenManagerBuilder(endpoint.getTokenEndpoint(), "client")
+                    .clientSecret("secret")
+                    .metrics(new TokenMetrics() {
+                        @Override
+                        public void grant() {
+                            grants.incrementAndGet();
+                        }
+
+                        @Override
+                        public void exchange() {
+                            exchanges.incrementAndGet();
+                        }
+                    })
+                    .buildTokenExchange(100);
+
+            exchange.exchange("user-token", "orders");
+            exchange.exchange("user-token", "orders");
+            exchange.exchange("user-token", "billing");
+
+            Assertions.assertEquals(2, exchanges.get());
+            Assertions.assertEquals(0, grants.get());
+        }
+    }
+
+    @Test
+    public void testSingleExchangeInFlight() throws Exception {
+        try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint().latency(100, TimeUnit.MILLISECONDS)) {
+            TokenExchangeManager exchange = new NimbusOIDCTokenManagerBuilder(endpoint.getTokenEndpoint(), "client")
+                    .clientSecret("secret")
+                    .buildTokenExchange(100);
+
+            List<CompletableFuture<BearerAccessToken>> accessTokens = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                accessTokens.add(exchange.exchangeAsync("user-token", "orders"));
+            }
+            for (CompletableFuture<BearerAccessToken> accessToken : accessTokens) {
+                Assertions.assertEquals(accessTokens.get(0).get(5, TimeUnit.SECONDS), accessToken.get());
+            }
+            Assertions.assertEquals(1, endpoint.getGrants());
+        }
+    }
+
+    @Test
+    public void testExpiredExchangedAgain() throws Exception {
+        FakeTokenClock clock = new FakeTokenClock();
+        try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint().lifetime(60, TimeUnit.SECONDS)) {
+            TokenExchangeManager exchange = new NimbusOIDCTokenManagerBuilder(endpoint.getTokenEndpoint(), "client")
+                    .clientSecret("secret")
+                    .expireThreshold(5000)
+                    .clock(clock)
+                    .buildTokenExchange(100);
+
+            BearerAccessToken first = exchange.exchange("user-token", "orders");
+            clock.advance(54, TimeUnit.SECONDS);
+            Assertions.assertSame(first, exchange.exchange("user-token", "orders"));
+            clock.advance(2, TimeUnit.SECONDS);
+            Assertions.assertNotEquals(first, exchange.exchange("user-token", "orders"));
+            Assertions.assertEquals(2, endpoint.getGrants());
+        }
+    }
+
+    @Test
+    public void testBoundedSize() throws Exception {
+        try (FakeTokenEndpoint endpoint = new FakeTokenEndpoint()) {
+            TokenExchangeManager exchange = new NimbusOIDCTokenManagerBuilder(endpoint.getTokenEndpoint(), "client")
+                    .clientSecret("secret")
+                    .buildTokenExchange(10);
+
+            for (int i = 0; i < 50; i++) {
+                exchange.exchange("user-token-" + i, "orders");
+                Assertions.assertTrue(exchange.size() <= 11);
+            }
+            Assertions.assertTrue(exchange.size() <= 10);
+            // the most recent ones, expiring last, are kept
+            exchange.exchange("user-token-49", "orders");
+            Assertions.assertEquals(50, endpoint.getGrants());
+        }
+    }
+}
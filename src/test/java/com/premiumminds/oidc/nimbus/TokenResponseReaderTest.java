@@ -0,0 +1,84 @@
+package com.premiumminds.oidc.nimbus;
+
+import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.http.HTTPResponse;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.oauth2.sdk.token.RefreshToken;
+import com.nimbusds.openid.connect.sdk.OIDCTokenResponse;
+import com.nimbusds.openid.connect.sdk.OIDCTokenResponseParser;
+import com.premiumminds.oidc.Tokens;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TokenResponseReaderTest {
+    @Test
+    public void testSameTokensAsNimbus() throws ParseException {
+        HTTPResponse response = response(200, "{\n"
+                + "  \"access_token\": \"eyJhbGciOiJub25lIn0.eyJzdWIiOiJjbGllbnQifQ.\",\n"
+                + "  \"token_type\": \"bearer\",\n"
+                + "  \"expires_in\": 300,\n"
+                + "  \"refresh_expires_in\": 1800,\n"
+                + "  \"refresh_token\": \"refresh\",\n"
+                + "  \"id_token\": \"eyJhbGciOiJub25lIn0.eyJzdWIiOiJjbGllbnQifQ.\",\n"
+                + "  \"not-before-policy\": 0,\n"
+                + "  \"session_state\": null,\n"
+                + "  \"authorization_details\": [{\"type\": \"account\", \"actions\": [\"read\", \"}\"]}],\n"
+                + "  \"scope\": \"openid profile\"\n"
+                + "}");
+
+        Tokens<BearerAccessToken, RefreshToken> tokens = read(response);
+        com.nimbusds.oauth2.sdk.token.Tokens expected =
+                ((OIDCTokenResponse) OIDCTokenResponseParser.parse(response)).getTokens();
+
+        Assertions.assertNotNull(tokens);
+        Assertions.assertEquals(expected.getBearerAccessToken(), tokens.getAccessToken());
+        Assertions.assertEquals(300, tokens.getAccessToken().getLifetime());
+        Assertions.assertEquals(Scope.parse("openid profile"), tokens.getAccessToken().getScope());
+        Assertions.assertEquals(expected.getRefreshToken(), tokens.getRefreshToken());
+        Assertions.assertEquals(300000, tokens.getExpiresIn());
+    }
+
+    @Test
+    public void testEscapesAndStringLifetime() {
+        Tokens<BearerAccessToken, RefreshToken> tokens = read(response(200,
+                "{\"access_token\":\"a\\/b\\u0041\\\"\",\"token_type\":\"Bearer\",\"expires_in\":\"60\"}"));
+
+        Assertions.assertNotNull(tokens);
+        Assertions.assertEquals("a/bA\"", tokens.getAccessToken().getValue());
+        Assertions.assertNull(tokens.getRefreshToken());
+        Assertions.assertEquals(60000, tokens.getExpiresIn());
+    }
+
+    @Test
+    public void testLeftToNimbus() {
+        // error response
+        Assertions.assertNull(read(response(400, "{\"error\":\"invalid_grant\"}")));
+        // other token type
+        Assertions.assertNull(read(response(200,
+                "{\"access_token\":\"token\",\"token_type\":\"DPoP\",\"expires_in\":60}")));
+        // fractional lifetime
+        Assertions.assertNull(read(response(200,
+                "{\"access_token\":\"token\",\"token_type\":\"Bearer\",\"expires_in\":60.5}")));
+        // malformed
+        Assertions.assertNull(read(response(200,
+                "{\"access_token\":\"token\",\"token_type\":\"Bearer\"")));
+        Assertions.assertNull(read(response(200,
+                "{\"access_token\":\"token\",\"token_type\":\"Bearer\"} trailing")));
+    }
+
+    private static Tokens<BearerAccessToken, RefreshToken> read(HTTPResponse response) {
+        return TokenResponseReader.read(response, accessToken -> accessToken.getLifetime() * 1000);
+    }
+
+    private static HTTPResponse response(int status, String body) {
+        HTTPResponse response = new HTTPResponse(status);
+        try {
+            response.setContentType("application/json; charset=UTF-8");
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+        response.setContent(body);
+        return response;
+    }
+}